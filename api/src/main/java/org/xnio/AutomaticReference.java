@@ -24,8 +24,8 @@ import java.lang.ref.PhantomReference;
 import java.lang.ref.ReferenceQueue;
 import java.security.PrivilegedAction;
 import java.util.Collections;
-import java.util.IdentityHashMap;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * An automatic reference is a phantom reference which is automatically freed by a background thread when it is
@@ -38,8 +38,8 @@ public abstract class AutomaticReference<T> extends PhantomReference<T> {
 
     static final Object PERMIT = new Object();
 
-    // todo: we can do better than this...
-    private static final Set<AutomaticReference<?>> LIVE_SET = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<AutomaticReference<?>, Boolean>()));
+    // references compare by identity, so a concurrent hash set serves as an identity set without a global lock
+    private static final Set<AutomaticReference<?>> LIVE_SET = Collections.newSetFromMap(new ConcurrentHashMap<AutomaticReference<?>, Boolean>());
 
     /**
      * Get the security authorization permit to create automatic references.
@@ -18,6 +18,7 @@
 
 package org.xnio;
 
+import java.io.Closeable;
 import java.io.DataInput;
 import java.io.DataOutput;
 import java.io.InputStream;
@@ -36,8 +37,13 @@ import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CoderResult;
 import java.util.Arrays;
 import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.xnio.management.BufferPoolMXBean;
 
 import static org.xnio._private.Messages.msg;
 
@@ -1994,11 +2000,25 @@ public final class Buffers {
      * @return the buffer pool
      */
     public static <B extends Buffer> Pool<B> allocatedBufferPool(final BufferAllocator<B> allocator, final int size) {
-        return new Pool<B>() {
-            public Pooled<B> allocate() {
-                return pooledWrapper(allocator.allocate(size));
-            }
-        };
+        return new AllocatedBufferPool<B>(allocator, size);
+    }
+
+    /**
+     * Register a management bean for the statistics of a buffer pool.  Only a {@link ByteBufferSlicePool} or a pool
+     * from {@link #allocatedBufferPool(BufferAllocator, int)} keeps statistics; other pools are not registered.
+     *
+     * @param pool the pool
+     * @param name the name of the pool
+     * @return a handle which may be used to remove the registration
+     */
+    public static Closeable registerMXBean(final Pool<?> pool, final String name) {
+        if (pool instanceof ByteBufferSlicePool) {
+            return ((ByteBufferSlicePool) pool).registerMXBean(name);
+        } else if (pool instanceof AllocatedBufferPool) {
+            return ((AllocatedBufferPool<?>) pool).registerMXBean(name);
+        } else {
+            return IoUtils.nullCloseable();
+        }
     }
 
     /**
@@ -2254,6 +2274,145 @@ public final class Buffers {
         }
     }
 
+    private static final class AllocatedBufferPool<B extends Buffer> implements Pool<B> {
+
+        private final BufferAllocator<B> allocator;
+        private final int size;
+        private final StripedCounter allocationCount = new StripedCounter();
+        private final StripedCounter freeCount = new StripedCounter();
+        private final StripedCounter foreignFreeCount = new StripedCounter();
+        private final StripedCounter discardCount = new StripedCounter();
+
+        AllocatedBufferPool(final BufferAllocator<B> allocator, final int size) {
+            this.allocator = allocator;
+            this.size = size;
+        }
+
+        public Pooled<B> allocate() {
+            final B buffer = allocator.allocate(size);
+            allocationCount.increment();
+            return new AllocatedPooledBuffer<B>(this, buffer);
+        }
+
+        Closeable registerMXBean(final String name) {
+            // every buffer is a region of its own, which the pool does not keep
+            return Xnio.register(new BufferPoolMXBean() {
+                public String getName() {
+                    return name;
+                }
+
+                public int getBufferSize() {
+                    return size;
+                }
+
+                public int getRegionCount() {
+                    return 0;
+                }
+
+                public long getRegionsAllocated() {
+                    return allocationCount.sum();
+                }
+
+                public long getReservedBytes() {
+                    return 0L;
+                }
+
+                public long getOutstandingCount() {
+                    final long released = freeCount.sum() + discardCount.sum();
+                    return allocationCount.sum() - released;
+                }
+
+                public long getLocalCacheHitCount() {
+                    return 0L;
+                }
+
+                public long getSharedStackHitCount() {
+                    return 0L;
+                }
+
+                public long getNewRegionHitCount() {
+                    return allocationCount.sum();
+                }
+
+                public long getFreeCount() {
+                    return freeCount.sum();
+                }
+
+                public long getForeignFreeCount() {
+                    return foreignFreeCount.sum();
+                }
+
+                public long getDiscardCount() {
+                    return discardCount.sum();
+                }
+
+                public int getLeakSampleInterval() {
+                    return 0;
+                }
+
+                public void setLeakSampleInterval(final int interval) {
+                    // nothing is pooled, so there is nothing to leak; the interval stays 0
+                }
+
+                public long getLeakCount() {
+                    return 0L;
+                }
+
+                public Map<String, Long> getLeakSites() {
+                    return Collections.emptyMap();
+                }
+            });
+        }
+    }
+
+    private static final class AllocatedPooledBuffer<B extends Buffer> implements Pooled<B> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<AllocatedPooledBuffer, Buffer> bufUpdater = AtomicReferenceFieldUpdater.newUpdater(AllocatedPooledBuffer.class, Buffer.class, "buf");
+
+        private final AllocatedBufferPool<B> pool;
+        private final B buffer;
+        private final Thread thread = Thread.currentThread();
+        private volatile B buf;
+
+        AllocatedPooledBuffer(final AllocatedBufferPool<B> pool, final B buffer) {
+            this.pool = pool;
+            this.buffer = buffer;
+            buf = buffer;
+        }
+
+        public void discard() {
+            if (bufUpdater.getAndSet(this, null) != null) {
+                pool.discardCount.increment();
+            }
+        }
+
+        public void free() {
+            if (bufUpdater.getAndSet(this, null) != null) {
+                pool.freeCount.increment();
+                if (thread != Thread.currentThread()) {
+                    pool.foreignFreeCount.increment();
+                }
+            }
+        }
+
+        public B getResource() throws IllegalStateException {
+            final B buffer = buf;
+            if (buffer == null) {
+                throw new IllegalStateException();
+            }
+            return buffer;
+        }
+
+        public void close() {
+            free();
+        }
+
+        public String toString() {
+            return "Pooled wrapper around " + buffer;
+        }
+    }
+
     private static class SecureByteBufferPool implements Pool<ByteBuffer> {
 
         private final Pool<ByteBuffer> delegate;
@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+import java.nio.ByteBuffer;
+
+import static org.xnio._private.Messages.msg;
+
+/**
+ * A buffer pooled allocator which serves several buffer sizes.  Each size class is a {@link ByteBufferSlicePool}
+ * with its own regions and thread-local caches, and a request for a given capacity is served from the smallest class
+ * which can hold it, so that small requests do not tie up large slices.
+ */
+public final class ByteBufferSizeClassPool implements Pool<ByteBuffer> {
+
+    private final SizeClass[] sizeClasses;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param allocator the buffer allocator to use
+     * @param bufferSizes the size of the buffers of each class, in ascending order
+     * @param maxRegionSize the maximum region size for each backing buffer
+     * @param threadLocalQueueSize the number of buffers of each class to cache on each thread
+     */
+    public ByteBufferSizeClassPool(final BufferAllocator<ByteBuffer> allocator, final int[] bufferSizes, final int maxRegionSize, final int threadLocalQueueSize) {
+        if (bufferSizes.length == 0) {
+            throw msg.parameterOutOfRange("bufferSizes");
+        }
+        sizeClasses = new SizeClass[bufferSizes.length];
+        for (int i = 0; i < bufferSizes.length; i ++) {
+            if (i > 0 && bufferSizes[i] <= bufferSizes[i - 1]) {
+                throw msg.parameterOutOfRange("bufferSizes");
+            }
+            sizeClasses[i] = new SizeClass(new ByteBufferSlicePool(allocator, bufferSizes[i], maxRegionSize, threadLocalQueueSize));
+        }
+    }
+
+    /**
+     * Construct a new instance.
+     *
+     * @param allocator the buffer allocator to use
+     * @param bufferSizes the size of the buffers of each class, in ascending order
+     * @param maxRegionSize the maximum region size for each backing buffer
+     */
+    public ByteBufferSizeClassPool(final BufferAllocator<ByteBuffer> allocator, final int[] bufferSizes, final int maxRegionSize) {
+        this(allocator, bufferSizes, maxRegionSize, ByteBufferSlicePool.LOCAL_LENGTH);
+    }
+
+    /**
+     * Construct a new instance, using a direct buffer allocator.
+     *
+     * @param bufferSizes the size of the buffers of each class, in ascending order
+     * @param maxRegionSize the maximum region size for each backing buffer
+     */
+    public ByteBufferSizeClassPool(final int[] bufferSizes, final int maxRegionSize) {
+        this(BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR, bufferSizes, maxRegionSize);
+    }
+
+    /**
+     * Allocate a buffer of the largest size class.
+     *
+     * @return the pooled buffer
+     */
+    public Pooled<ByteBuffer> allocate() {
+        final SizeClass sizeClass = sizeClasses[sizeClasses.length - 1];
+        return sizeClass.allocate(sizeClass.getBufferSize());
+    }
+
+    /**
+     * Allocate a buffer from the smallest size class which can hold the given capacity.  The buffer's capacity is
+     * that of its class, so it may exceed the requested capacity.
+     *
+     * @param capacity the capacity required
+     * @return the pooled buffer
+     * @throws IllegalArgumentException if the capacity exceeds the largest size class
+     */
+    public Pooled<ByteBuffer> allocate(final int capacity) {
+        return getSizeClass(capacity).allocate(capacity);
+    }
+
+    /**
+     * Get the size class which serves the given capacity.
+     *
+     * @param capacity the capacity required
+     * @return the size class
+     * @throws IllegalArgumentException if the capacity exceeds the largest size class
+     */
+    public SizeClass getSizeClass(final int capacity) {
+        for (SizeClass sizeClass : sizeClasses) {
+            if (capacity <= sizeClass.getBufferSize()) {
+                return sizeClass;
+            }
+        }
+        throw msg.parameterOutOfRange("capacity");
+    }
+
+    /**
+     * Get the size classes of this pool, from the smallest.
+     *
+     * @return the size classes
+     */
+    public SizeClass[] getSizeClasses() {
+        return sizeClasses.clone();
+    }
+
+    /**
+     * A size class of a {@link ByteBufferSizeClassPool}, with its usage statistics.
+     */
+    public static final class SizeClass {
+
+        private final ByteBufferSlicePool pool;
+        private final StripedCounter allocationCount = new StripedCounter();
+        private final StripedCounter requestedBytes = new StripedCounter();
+
+        SizeClass(final ByteBufferSlicePool pool) {
+            this.pool = pool;
+        }
+
+        Pooled<ByteBuffer> allocate(final int capacity) {
+            allocationCount.increment();
+            requestedBytes.add(capacity);
+            return pool.allocate();
+        }
+
+        /**
+         * Get the size of the buffers of this class.
+         *
+         * @return the buffer size
+         */
+        public int getBufferSize() {
+            return pool.getBufferSize();
+        }
+
+        /**
+         * Get the number of buffers which have been allocated from this class.
+         *
+         * @return the allocation count
+         */
+        public long getAllocationCount() {
+            return allocationCount.sum();
+        }
+
+        /**
+         * Get the total capacity requested by the allocations from this class.  The difference from the allocation
+         * count times the buffer size is the space lost to rounding up to the class size.
+         *
+         * @return the requested byte count
+         */
+        public long getRequestedBytes() {
+            return requestedBytes.sum();
+        }
+
+        /**
+         * Get the number of regions which back this class.
+         *
+         * @return the region count
+         */
+        public int getRegionCount() {
+            return pool.getRegionCount();
+        }
+
+        /**
+         * Get the memory held by the regions which back this class.
+         *
+         * @return the region byte count
+         */
+        public long getRegionBytes() {
+            return (long) pool.getRegionCount() * pool.getBuffersPerRegion() * pool.getBufferSize();
+        }
+
+        public String toString() {
+            return "Size class of " + getBufferSize() + " bytes";
+        }
+    }
+}
@@ -19,14 +19,28 @@
 
 package org.xnio;
 
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.util.ArrayDeque;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Queue;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.xnio.management.BufferPoolMXBean;
 
 import static org.xnio._private.Messages.msg;
 
@@ -34,12 +48,26 @@ import static org.xnio._private.Messages.msg;
  * A buffer pooled allocator.  This pool uses a series of buffer regions to back the
  * returned pooled buffers.  When the buffer is no longer needed, it should be freed back into the pool; failure
  * to do so will cause the corresponding buffer area to be unavailable until the buffer is garbage-collected.
+ * <p>
+ * By default regions are kept for the life of the pool.  A pool with a region idle timeout tracks the buffers
+ * outstanding from each region, and {@linkplain #trim() trims} regions which have been entirely free for at least the
+ * timeout, leaving their memory to be reclaimed by the garbage collector.  A pool may also be given a limit on the
+ * total size of its regions, beyond which allocation fails rather than grows the pool.
+ * <p>
+ * For leak detection, the pool can record the allocation site of a sample of its buffers, and reports each sampled
+ * buffer which becomes unreachable without being freed.  The sampling interval defaults to the value of the
+ * {@code xnio.bufferpool.leak-sample-interval} system property, or 0 (disabled) if it is not set.
+ * <p>
+ * Each thread keeps a small cache of free buffers.  XNIO I/O and worker threads return their cached buffers to the
+ * pool as they exit.  Other threads cannot be hooked in this way: their caches are only returned once the thread
+ * object itself has been garbage-collected, so buffers cached by an exited application thread stay unavailable to
+ * other threads until the next collection which reclaims that thread.
  *
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
 
-    private static final int LOCAL_LENGTH;
+    static final int LOCAL_LENGTH;
 
     static {
         String value = AccessController.doPrivileged(new ReadPropertyAction("xnio.bufferpool.threadlocal.size", "12"));
@@ -50,28 +78,102 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
             val = 12;
         }
         LOCAL_LENGTH = val;
+        value = AccessController.doPrivileged(new ReadPropertyAction("xnio.bufferpool.leak-sample-interval", "0"));
+        try {
+            val = Math.max(0, Integer.parseInt(value));
+        } catch (NumberFormatException ignored) {
+            val = 0;
+        }
+        LEAK_SAMPLE_INTERVAL = val;
+        // a power of two at least the processor count
+        STRIPES = Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1)));
     }
 
-    private final Set<Ref> refSet = Collections.synchronizedSet(new HashSet<Ref>());
-    private final Queue<Slice> sliceQueue;
+    private static final int STRIPES;
+    private static final int LEAK_SAMPLE_INTERVAL;
+    /**
+     * The distance between stripe heads in the head array, so that each head has a cache line of its own.
+     */
+    private static final int STRIDE = 16;
+    /**
+     * A stripe head while a thread is popping it.
+     */
+    private static final Object BUSY = new Object();
+
+    /**
+     * The return queue head of an arena whose thread has exited.
+     */
+    private static final Object RELEASED = new Object();
+
+    /**
+     * The caches of the current XNIO thread, which are released by the thread as it exits.
+     */
+    private static final ThreadLocal<ArrayList<ByteBufferSlicePool.ThreadLocalCache>> exitCaches = new ThreadLocal<ArrayList<ByteBufferSlicePool.ThreadLocalCache>>();
+
+    private static final AtomicInteger stripeSeq = new AtomicInteger();
+    private static final AtomicInteger arenaSeq = new AtomicInteger();
+    private static final AtomicIntegerFieldUpdater<ByteBufferSlicePool> regionCountUpdater = AtomicIntegerFieldUpdater.newUpdater(ByteBufferSlicePool.class, "regionCount");
+    private static final AtomicLongFieldUpdater<ByteBufferSlicePool> nextTrimUpdater = AtomicLongFieldUpdater.newUpdater(ByteBufferSlicePool.class, "nextTrim");
+
+    /**
+     * The free slices beyond the thread-local caches, as striped intrusive stacks.
+     */
+    private final AtomicReferenceArray<Object> stripeHeads = new AtomicReferenceArray<Object>(STRIPES * STRIDE);
     private final BufferAllocator<ByteBuffer> allocator;
     private final int bufferSize;
     private final int buffersPerRegion;
     private final int threadLocalQueueSize;
+    /**
+     * The index of this pool's arena in each I/O thread, or -1 if this pool has no arenas.
+     */
+    private final int arenaIndex;
+    /**
+     * The time in nanoseconds that a region must be entirely free before it is trimmed, or 0 to keep every region.
+     */
+    private final long regionIdleTimeout;
+    private final long maxPooledBytes;
+    private final int maxRegionCount;
+    /**
+     * The regions which may be trimmed, or {@code null} if this pool keeps every region.
+     */
+    private final ConcurrentLinkedQueue<Region> regions;
+    private volatile int regionCount;
+    volatile long nextTrim;
+    private volatile int leakSampleInterval = LEAK_SAMPLE_INTERVAL;
+    private final AtomicLong leakCount = new AtomicLong();
+    /**
+     * Allocation statistics, by where the buffer came from and where it went.
+     */
+    private final StripedCounter localCacheHits = new StripedCounter();
+    private final StripedCounter sharedStackHits = new StripedCounter();
+    private final StripedCounter newRegionHits = new StripedCounter();
+    private final StripedCounter regionsAllocated = new StripedCounter();
+    private final StripedCounter freeCount = new StripedCounter();
+    private final StripedCounter foreignFreeCount = new StripedCounter();
+    private final StripedCounter discardCount = new StripedCounter();
+    private final ConcurrentHashMap<String, AtomicLong> leakSites = new ConcurrentHashMap<String, AtomicLong>();
     private final ThreadLocal<ThreadLocalCache> localQueueHolder = new ThreadLocal<ThreadLocalCache>() {
         protected ThreadLocalCache initialValue() {
-            //noinspection serial
-            return new ThreadLocalCache(this);
-        }
-
-        public void remove() {
-            final ArrayDeque<Slice> deque = get().queue;
-            Slice slice = deque.poll();
-            while (slice != null) {
-                doFree(slice);
-                slice = deque.poll();
+            final ThreadLocalCache cache = new ThreadLocalCache(ByteBufferSlicePool.this);
+            final Thread thread = Thread.currentThread();
+            if (thread instanceof XnioIoThread || thread instanceof XnioWorker.WorkerTaskThread || thread instanceof XnioWorker.WorkerForkJoinThread) {
+                ArrayList<ThreadLocalCache> caches = exitCaches.get();
+                if (caches == null) {
+                    exitCaches.set(caches = new ArrayList<ThreadLocalCache>());
+                } else {
+                    // drop the caches of pools which have since been collected
+                    for (Iterator<ThreadLocalCache> iterator = caches.iterator(); iterator.hasNext(); ) {
+                        if (! iterator.next().isPoolReachable()) {
+                            iterator.remove();
+                        }
+                    }
+                }
+                caches.add(cache);
+            } else {
+                // the reference is kept reachable until the thread is collected
+                new CacheRef(thread, cache);
             }
-            super.remove();
+            return cache;
         }
     };
 
@@ -84,17 +186,64 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
      * @param threadLocalQueueSize the number of buffers to cache on each thread
      */
     public ByteBufferSlicePool(final BufferAllocator<ByteBuffer> allocator, final int bufferSize, final int maxRegionSize, final int threadLocalQueueSize) {
+        this(allocator, bufferSize, maxRegionSize, threadLocalQueueSize, false);
+    }
+
+    /**
+     * Construct a new instance.  In arena mode, each {@link XnioIoThread} allocates from an arena of its own which it
+     * reaches without a thread-local lookup, and buffers freed on another thread are returned to the arena of the
+     * I/O thread which allocated them.  The arenas live as long as their threads, so this mode suits pools which
+     * live as long as the worker.
+     *
+     * @param allocator the buffer allocator to use
+     * @param bufferSize the size of each buffer
+     * @param maxRegionSize the maximum region size for each backing buffer
+     * @param threadLocalQueueSize the number of buffers to cache on each thread
+     * @param ioThreadArenas {@code true} to give each I/O thread an arena
+     */
+    public ByteBufferSlicePool(final BufferAllocator<ByteBuffer> allocator, final int bufferSize, final int maxRegionSize, final int threadLocalQueueSize, final boolean ioThreadArenas) {
+        this(allocator, bufferSize, maxRegionSize, threadLocalQueueSize, ioThreadArenas, 0L, 0L);
+    }
+
+    /**
+     * Construct a new instance.  Regions which have been entirely free for the idle timeout are dropped from the pool
+     * when it is next {@linkplain #trim() trimmed}, which happens as buffers are freed and may also be done on a
+     * schedule.  Once the regions reach the pooled byte limit, allocation fails with an {@link IllegalStateException}
+     * unless an idle region can be trimmed to make room.
+     *
+     * @param allocator the buffer allocator to use
+     * @param bufferSize the size of each buffer
+     * @param maxRegionSize the maximum region size for each backing buffer
+     * @param threadLocalQueueSize the number of buffers to cache on each thread
+     * @param ioThreadArenas {@code true} to give each I/O thread an arena
+     * @param regionIdleTimeout the time in milliseconds that a region must be entirely free before it is trimmed, or 0
+     *     to keep every region
+     * @param maxPooledBytes the limit on the total size of the regions, or 0 for no limit
+     */
+    public ByteBufferSlicePool(final BufferAllocator<ByteBuffer> allocator, final int bufferSize, final int maxRegionSize, final int threadLocalQueueSize, final boolean ioThreadArenas, final long regionIdleTimeout, final long maxPooledBytes) {
         if (bufferSize <= 0) {
             throw msg.parameterOutOfRange("bufferSize");
         }
         if (maxRegionSize < bufferSize) {
             throw msg.parameterOutOfRange("bufferSize");
         }
+        if (regionIdleTimeout < 0L) {
+            throw msg.parameterOutOfRange("regionIdleTimeout");
+        }
         buffersPerRegion = maxRegionSize / bufferSize;
+        final long regionBytes = (long) buffersPerRegion * bufferSize;
+        if (maxPooledBytes < 0L || maxPooledBytes > 0L && maxPooledBytes < regionBytes) {
+            throw msg.parameterOutOfRange("maxPooledBytes");
+        }
         this.bufferSize = bufferSize;
         this.allocator = allocator;
-        sliceQueue = new ConcurrentLinkedQueue<Slice>();
         this.threadLocalQueueSize = threadLocalQueueSize;
+        arenaIndex = ioThreadArenas ? arenaSeq.getAndIncrement() : -1;
+        this.regionIdleTimeout = TimeUnit.MILLISECONDS.toNanos(regionIdleTimeout);
+        this.maxPooledBytes = maxPooledBytes;
+        maxRegionCount = maxPooledBytes == 0L ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, maxPooledBytes / regionBytes);
+        regions = regionIdleTimeout == 0L ? null : new ConcurrentLinkedQueue<Region>();
+        nextTrim = System.nanoTime();
     }
 
     /**
@@ -120,34 +269,258 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
 
     /** {@inheritDoc} */
     public Pooled<ByteBuffer> allocate() {
+        if (arenaIndex != -1) {
+            final Thread thread = Thread.currentThread();
+            if (thread instanceof XnioIoThread) {
+                return wrap(getArena((XnioIoThread) thread).allocate());
+            }
+        }
         ThreadLocalCache localCache = localQueueHolder.get();
         if(localCache.outstanding != LOCAL_LENGTH) {
             localCache.outstanding++;
         }
-        Slice slice = localCache.queue.poll();
-        if (slice != null) {
-            return new PooledByteBuffer(slice, slice.slice());
+        Slice slice;
+        StripedCounter source;
+        do {
+            slice = localCache.queue.poll();
+            source = localCacheHits;
+            if (slice == null) {
+                slice = pop(localCache.stripe);
+                source = sharedStackHits;
+                if (slice == null) {
+                    slice = carve(localCache.stripe);
+                    source = newRegionHits;
+                }
+            }
+        } while (! acquire(slice));
+        source.increment();
+        return wrap(slice);
+    }
+
+    private Pooled<ByteBuffer> wrap(final Slice slice) {
+        final PooledByteBuffer pooled = new PooledByteBuffer(slice, slice.slice());
+        final int interval = leakSampleInterval;
+        if (interval != 0 && (interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0)) {
+            pooled.leakRef = new LeakRef(pooled);
         }
-        final Queue<Slice> sliceQueue = this.sliceQueue;
-        slice = sliceQueue.poll();
-        if (slice != null) {
-            return new PooledByteBuffer(slice, slice.slice());
+        return pooled;
+    }
+
+    /**
+     * Carve a new region, keeping its first slice and pushing the rest onto the shared stacks.  Threads which miss at
+     * the same time each carve their own region rather than wait.
+     */
+    private Slice carve(final int stripe) {
+        int count;
+        for (;;) {
+            count = regionCount;
+            if (count >= maxRegionCount) {
+                if (trim() > 0) {
+                    continue;
+                }
+                throw msg.bufferPoolExhausted(maxPooledBytes);
+            }
+            if (regionCountUpdater.compareAndSet(this, count, count + 1)) {
+                break;
+            }
+        }
+
+        final int bufferSize = this.bufferSize;
+        final int buffersPerRegion = this.buffersPerRegion;
+        ByteBuffer buffer = null;
+        try {
+            buffer = allocator.allocate(buffersPerRegion * bufferSize);
+        } finally {
+            if (buffer == null) {
+                regionCountUpdater.decrementAndGet(this);
+            }
+        }
+        regionsAllocated.increment();
+        final Region region;
+        if (regions != null) {
+            region = new Region();
+            regions.add(region);
+        } else {
+            region = null;
+        }
+        if (buffersPerRegion > 1) {
+            final Slice last = new Slice(buffer, region, (buffersPerRegion - 1) * bufferSize, bufferSize);
+            Slice first = last;
+            for (int i = buffersPerRegion - 2; i > 0; i --) {
+                final Slice next = first;
+                first = new Slice(buffer, region, i * bufferSize, bufferSize);
+                first.next = next;
+            }
+            push(first, last, stripe);
+        }
+        return new Slice(buffer, region, 0, bufferSize);
+    }
+
+    /**
+     * Count a slice as outstanding from its region.
+     *
+     * @return {@code false} if the region was trimmed, in which case the slice must be dropped
+     */
+    private static boolean acquire(final Slice slice) {
+        final Region region = slice.region;
+        if (region == null) {
+            return true;
+        }
+        int count;
+        do {
+            count = region.outstanding;
+            if (count < 0) {
+                return false;
+            }
+        } while (! Region.outstandingUpdater.compareAndSet(region, count, count + 1));
+        return true;
+    }
+
+    /**
+     * Return a buffer freed by the user to the pool.
+     */
+    private void freeSlice(final Slice slice) {
+        final Region region = slice.region;
+        if (region != null && Region.outstandingUpdater.decrementAndGet(region) == 0) {
+            final long now = System.nanoTime();
+            // a trim which runs before this store may see an earlier idle time; the region is entirely free
+            // either way, so at worst it is trimmed early
+            region.idleSince = now;
+            final long nextTrim = this.nextTrim;
+            if (now - nextTrim >= 0L && nextTrimUpdater.compareAndSet(this, nextTrim, now + (regionIdleTimeout >> 1))) {
+                trim(now);
+            }
+        }
+        doFree(slice);
+    }
+
+    /**
+     * Drop the regions which have been entirely free for at least the region idle timeout.  The memory of a dropped
+     * region is reclaimed by the garbage collector once its free buffers have been removed from the shared stacks
+     * and from the caches of the threads which last freed them; a pool which may fall idle altogether should be
+     * trimmed on a schedule, for example by {@link XnioIoThread#executeAfter(Runnable, long, TimeUnit)}.
+     *
+     * @return the number of regions dropped
+     */
+    public int trim() {
+        return trim(System.nanoTime());
+    }
+
+    private int trim(final long now) {
+        final ConcurrentLinkedQueue<Region> regions = this.regions;
+        if (regions == null) {
+            return 0;
         }
-        synchronized (sliceQueue) {
-            slice = sliceQueue.poll();
-            if (slice != null) {
-                return new PooledByteBuffer(slice, slice.slice());
+        int trimmed = 0;
+        for (Iterator<Region> iterator = regions.iterator(); iterator.hasNext();) {
+            final Region region = iterator.next();
+            // once marked, the region's free slices can no longer be allocated
+            if (region.outstanding == 0 && now - region.idleSince >= regionIdleTimeout && Region.outstandingUpdater.compareAndSet(region, 0, -1)) {
+                iterator.remove();
+                regionCountUpdater.decrementAndGet(this);
+                trimmed ++;
             }
-            final int bufferSize = this.bufferSize;
-            final int buffersPerRegion = this.buffersPerRegion;
-            final ByteBuffer region = allocator.allocate(buffersPerRegion * bufferSize);
-            int idx = bufferSize;
-            for (int i = 1; i < buffersPerRegion; i ++) {
-                sliceQueue.add(new Slice(region, idx, bufferSize));
-                idx += bufferSize;
+        }
+        if (trimmed > 0) {
+            purge();
+        }
+        return trimmed;
+    }
+
+    /**
+     * Remove the slices of dropped regions from the shared stacks.  A stack which is being popped is left for its
+     * slices to be dropped as they are allocated.
+     */
+    private void purge() {
+        final AtomicReferenceArray<Object> stripeHeads = this.stripeHeads;
+        for (int i = 0; i < STRIPES; i ++) {
+            final int idx = i * STRIDE;
+            Object head;
+            do {
+                head = stripeHeads.get(idx);
+            } while (head != null && head != BUSY && ! stripeHeads.compareAndSet(idx, head, null));
+            if (head == null || head == BUSY) {
+                continue;
+            }
+            Slice first = null;
+            Slice last = null;
+            for (Slice slice = (Slice) head; slice != null;) {
+                final Slice next = slice.next;
+                slice.next = null;
+                if (slice.region.outstanding >= 0) {
+                    if (last == null) {
+                        first = slice;
+                    } else {
+                        last.next = slice;
+                    }
+                    last = slice;
+                }
+                slice = next;
+            }
+            if (first != null) {
+                push(first, last, i);
+            }
+        }
+    }
+
+    private Arena getArena(final XnioIoThread thread) {
+        final int arenaIndex = this.arenaIndex;
+        Arena[] arenas = thread.bufferArenas;
+        if (arenaIndex < arenas.length) {
+            final Arena arena = arenas[arenaIndex];
+            if (arena != null) {
+                return arena;
+            }
+        } else {
+            // only the owning thread touches this array
+            thread.bufferArenas = arenas = Arrays.copyOf(arenas, Math.max(arenaIndex + 1, arenas.length << 1));
+        }
+        final Arena arena = new Arena(thread);
+        arenas[arenaIndex] = arena;
+        return arena;
+    }
+
+    private Slice pop(final int stripe) {
+        final AtomicReferenceArray<Object> stripeHeads = this.stripeHeads;
+        boolean sawBusy;
+        int pass = 0;
+        do {
+            sawBusy = false;
+            for (int i = 0; i < STRIPES; i ++) {
+                final int idx = ((stripe + i) & (STRIPES - 1)) * STRIDE;
+                Object head;
+                while ((head = stripeHeads.get(idx)) != null) {
+                    if (head == BUSY) {
+                        // the popping thread is about to put the next slice back
+                        sawBusy = true;
+                        break;
+                    }
+                    // claiming the head before unlinking it keeps a concurrently recycled slice from being
+                    // mistaken for the head (the ABA problem)
+                    if (stripeHeads.compareAndSet(idx, head, BUSY)) {
+                        final Slice slice = (Slice) head;
+                        stripeHeads.set(idx, slice.next);
+                        slice.next = null;
+                        return slice;
+                    }
+                }
+            }
+            // a claimed stripe is released within a few instructions, unless its thread is descheduled
+        } while (sawBusy && ++pass < 8);
+        return null;
+    }
+
+    private void push(final Slice first, final Slice last, final int stripe) {
+        final AtomicReferenceArray<Object> stripeHeads = this.stripeHeads;
+        for (int i = 0;; i ++) {
+            final int idx = ((stripe + i) & (STRIPES - 1)) * STRIDE;
+            final Object head = stripeHeads.get(idx);
+            if (head != BUSY) {
+                last.next = (Slice) head;
+                if (stripeHeads.compareAndSet(idx, head, first)) {
+                    return;
+                }
             }
-            final Slice newSlice = new Slice(region, 0, bufferSize);
-            return new PooledByteBuffer(newSlice, newSlice.slice());
         }
     }
 
@@ -158,7 +531,147 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
         return bufferSize;
     }
 
+    /**
+     * Return the buffers cached by the current thread in every pool to the shared stacks.  XNIO threads call this as
+     * they exit; the caches of other threads are returned once the thread has been garbage-collected.
+     */
+    static void releaseThreadCaches() {
+        final ArrayList<ThreadLocalCache> caches = exitCaches.get();
+        if (caches != null) {
+            exitCaches.remove();
+            for (ThreadLocalCache cache : caches) {
+                cache.release();
+                cache.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the leak detection sampling interval.  One in this many allocations records its allocation site, so that
+     * the buffer can be reported if it becomes unreachable without being freed.
+     *
+     * @return the sampling interval, or 0 if leak detection is disabled
+     */
+    public int getLeakSampleInterval() {
+        return leakSampleInterval;
+    }
+
+    /**
+     * Set the leak detection sampling interval.  Each leak is counted, and the first leak from each allocation site
+     * is logged.
+     *
+     * @param interval the sampling interval, or 0 to disable leak detection
+     */
+    public void setLeakSampleInterval(final int interval) {
+        if (interval < 0) {
+            throw msg.parameterOutOfRange("interval");
+        }
+        leakSampleInterval = interval;
+    }
+
+    /**
+     * Get the number of sampled buffers which became unreachable without being freed.
+     *
+     * @return the leak count
+     */
+    public long getLeakCount() {
+        return leakCount.get();
+    }
+
+    /**
+     * Register a management bean for this pool.  The registration should be closed when the pool is no longer used.
+     *
+     * @param name the name of the pool
+     * @return a handle which may be used to remove the registration
+     */
+    public Closeable registerMXBean(final String name) {
+        return Xnio.register(new BufferPoolMXBean() {
+            public String getName() {
+                return name;
+            }
+
+            public int getBufferSize() {
+                return bufferSize;
+            }
+
+            public int getRegionCount() {
+                return regionCount;
+            }
+
+            public long getRegionsAllocated() {
+                return regionsAllocated.sum();
+            }
+
+            public long getReservedBytes() {
+                return (long) regionCount * buffersPerRegion * bufferSize;
+            }
+
+            public long getOutstandingCount() {
+                // read the releases first, so that a concurrent allocate and free cannot make this negative
+                final long released = freeCount.sum() + discardCount.sum();
+                return getLocalCacheHitCount() + getSharedStackHitCount() + getNewRegionHitCount() - released;
+            }
+
+            public long getLocalCacheHitCount() {
+                return localCacheHits.sum();
+            }
+
+            public long getSharedStackHitCount() {
+                return sharedStackHits.sum();
+            }
+
+            public long getNewRegionHitCount() {
+                return newRegionHits.sum();
+            }
+
+            public long getFreeCount() {
+                return freeCount.sum();
+            }
+
+            public long getForeignFreeCount() {
+                return foreignFreeCount.sum();
+            }
+
+            public long getDiscardCount() {
+                return discardCount.sum();
+            }
+
+            public int getLeakSampleInterval() {
+                return leakSampleInterval;
+            }
+
+            public void setLeakSampleInterval(final int interval) {
+                ByteBufferSlicePool.this.setLeakSampleInterval(interval);
+            }
+
+            public long getLeakCount() {
+                return leakCount.get();
+            }
+
+            public Map<String, Long> getLeakSites() {
+                final Map<String, Long> sites = new HashMap<String, Long>();
+                for (Map.Entry<String, AtomicLong> entry : leakSites.entrySet()) {
+                    sites.put(entry.getKey(), Long.valueOf(entry.getValue().get()));
+                }
+                return sites;
+            }
+        });
+    }
+
+    int getBuffersPerRegion() {
+        return buffersPerRegion;
+    }
+
+    int getRegionCount() {
+        return regionCount;
+    }
+
     private void doFree(Slice region) {
+        final Arena arena = region.arena;
+        if (arena != null) {
+            arena.free(region);
+            return;
+        }
         final ThreadLocalCache localCache = localQueueHolder.get();
         boolean cacheOk = false;
         if(localCache.outstanding > 0) {
@@ -167,7 +680,7 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
         }
         ArrayDeque<Slice> localQueue = localCache.queue;
         if (localQueue.size() == LOCAL_LENGTH || !cacheOk) {
-            sliceQueue.add(region);
+            push(region, region, localCache.stripe);
         } else {
             localQueue.add(region);
         }
@@ -175,7 +688,12 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
 
     private final class PooledByteBuffer implements Pooled<ByteBuffer> {
         private final Slice region;
+        private final Thread thread = Thread.currentThread();
         ByteBuffer buffer;
+        /**
+         * The leak detector of this buffer, if it was sampled.
+         */
+        LeakRef leakRef;
 
         PooledByteBuffer(final Slice region, final ByteBuffer buffer) {
             this.region = region;
@@ -186,8 +704,10 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
             final ByteBuffer buffer = this.buffer;
             this.buffer = null;
             if (buffer != null) {
-                // free when GC'd, no sooner
-                refSet.add(new Ref(buffer, region));
+                released();
+                discardCount.increment();
+                // free when GC'd, no sooner; the reference keeps itself reachable until then
+                new Ref(buffer, region);
             }
         }
 
@@ -195,8 +715,20 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
             ByteBuffer buffer = this.buffer;
             this.buffer = null;
             if (buffer != null) {
+                released();
+                freeCount.increment();
+                if (thread != Thread.currentThread()) {
+                    foreignFreeCount.increment();
+                }
                 // trust the user, repool the buffer
-                doFree(region);
+                freeSlice(region);
+            }
+        }
+
+        private void released() {
+            final LeakRef leakRef = this.leakRef;
+            if (leakRef != null) {
+                leakRef.released = true;
             }
         }
 
@@ -217,11 +749,24 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
         }
     }
 
-    private final class Slice {
+    private static final class Slice {
         private final ByteBuffer parent;
-
-        private Slice(final ByteBuffer parent, final int start, final int size) {
+        /**
+         * The region of this slice, if this pool trims its regions.
+         */
+        final Region region;
+        /**
+         * The next free slice on the same stripe or arena return queue.
+         */
+        Slice next;
+        /**
+         * The arena which allocated this slice, if any.
+         */
+        Arena arena;
+
+        private Slice(final ByteBuffer parent, final Region region, final int start, final int size) {
             this.parent = (ByteBuffer)parent.duplicate().position(start).limit(start+size);
+            this.region = region;
         }
 
         ByteBuffer slice() {
@@ -229,6 +774,18 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
         }
     }
 
+    /**
+     * A region of a trimming pool.  The outstanding count is the number of its slices held by users, or -1 once the
+     * region has been trimmed.
+     */
+    static final class Region {
+
+        static final AtomicIntegerFieldUpdater<Region> outstandingUpdater = AtomicIntegerFieldUpdater.newUpdater(Region.class, "outstanding");
+
+        volatile int outstanding;
+        volatile long idleSince = System.nanoTime();
+    }
+
     final class Ref extends AutomaticReference<ByteBuffer> {
         private final Slice region;
 
@@ -238,29 +795,214 @@ public final class ByteBufferSlicePool implements Pool<ByteBuffer> {
         }
 
         protected void free() {
-            doFree(region);
-            refSet.remove(this);
+            freeSlice(region);
+        }
+    }
+
+    /**
+     * A reference to a sampled buffer, which reports the buffer if it is collected before it is freed or discarded.
+     */
+    final class LeakRef extends AutomaticReference<PooledByteBuffer> {
+        private final Throwable allocationSite = new Throwable("Buffer allocation site");
+        volatile boolean released;
+
+        private LeakRef(final PooledByteBuffer referent) {
+            super(referent, AutomaticReference.PERMIT);
+        }
+
+        protected void free() {
+            if (released) {
+                return;
+            }
+            // the slice may still be in use through its buffer, so it is never returned to the pool
+            leakCount.incrementAndGet();
+            final StringBuilder b = new StringBuilder();
+            for (StackTraceElement element : allocationSite.getStackTrace()) {
+                // skip the frames of the pool itself
+                if (b.length() == 0 && (element.getClassName().equals(ByteBufferSlicePool.class.getName()) || element.getClassName().startsWith(ByteBufferSlicePool.class.getName() + "$"))) {
+                    continue;
+                }
+                b.append(element).append('\n');
+            }
+            final String site = b.toString();
+            AtomicLong count = leakSites.get(site);
+            if (count == null) {
+                final AtomicLong existing = leakSites.putIfAbsent(site, count = new AtomicLong());
+                if (existing != null) {
+                    count = existing;
+                } else {
+                    msg.bufferLeaked(allocationSite);
+                }
+            }
+            count.incrementAndGet();
+        }
+    }
+
+    /**
+     * A reference to a thread which is not an XNIO thread, which returns the thread's cached buffers once the thread
+     * has been collected.  It holds the pool only weakly, through the cache.  Unlike the exit hook of an XNIO thread,
+     * this depends on the garbage collector: the cache stays out of the pool for as long as the thread object is
+     * reachable, even after the thread has terminated.
+     */
+    static final class CacheRef extends AutomaticReference<Thread> {
+        private final ThreadLocalCache cache;
+
+        private CacheRef(final Thread referent, final ThreadLocalCache cache) {
+            super(referent, AutomaticReference.PERMIT);
+            this.cache = cache;
+        }
+
+        protected void free() {
+            cache.release();
         }
     }
 
-    private final class ThreadLocalCache {
+    /**
+     * The buffers of one I/O thread.  Only the owning thread touches the cache; other threads push the slices which
+     * they free onto the return queue, which the owner takes in one swap when its cache runs dry.
+     */
+    final class Arena {
+
+        private final XnioIoThread thread;
+        /**
+         * The statistic of the slice last taken.
+         */
+        private StripedCounter source;
+        private final ArrayDeque<Slice> cache = new ArrayDeque<Slice>(threadLocalQueueSize);
+        private final int stripe = stripeSeq.getAndIncrement();
+        volatile Object returned;
+
+        Arena(final XnioIoThread thread) {
+            this.thread = thread;
+        }
 
-        private final ThreadLocal<ThreadLocalCache> threadLocal;
+        Slice allocate() {
+            Slice slice;
+            do {
+                slice = take();
+            } while (! acquire(slice));
+            source.increment();
+            slice.arena = this;
+            return slice;
+        }
 
-        final ArrayDeque<Slice> queue =  new ArrayDeque<Slice>(threadLocalQueueSize) {
+        private Slice take() {
+            // the most recently freed buffer is the likeliest to be in this core's cache
+            Slice slice = cache.pollLast();
+            source = localCacheHits;
+            if (slice == null) {
+                final Object returned = returnedUpdater.getAndSet(this, null);
+                if (returned != null) {
+                    slice = (Slice) returned;
+                    for (Slice next = slice.next; next != null; ) {
+                        final Slice current = next;
+                        next = next.next;
+                        current.next = null;
+                        free(current);
+                    }
+                    slice.next = null;
+                } else {
+                    slice = pop(stripe);
+                    source = sharedStackHits;
+                    if (slice == null) {
+                        slice = carve(stripe);
+                        source = newRegionHits;
+                    }
+                }
+            }
+            return slice;
+        }
 
-            /**
-             * This sucks but there's no other way to ensure these buffers are returned to the pool.
-             */
-            protected void finalize() {
-                threadLocal.remove();
+        void free(final Slice slice) {
+            if (Thread.currentThread() == thread) {
+                if (cache.size() < threadLocalQueueSize) {
+                    cache.add(slice);
+                } else {
+                    slice.arena = null;
+                    push(slice, slice, stripe);
+                }
+                return;
             }
-        };
+            Object head;
+            do {
+                head = returned;
+                if (head == RELEASED) {
+                    slice.arena = null;
+                    push(slice, slice, stripe);
+                    return;
+                }
+                slice.next = (Slice) head;
+            } while (! returnedUpdater.compareAndSet(this, head, slice));
+        }
+
+        /**
+         * Return the cached buffers of the exiting owner thread to the shared stacks.
+         */
+        void release() {
+            Slice slice;
+            while ((slice = cache.poll()) != null) {
+                slice.arena = null;
+                push(slice, slice, stripe);
+            }
+            final Object returned = returnedUpdater.getAndSet(this, RELEASED);
+            slice = (Slice) returned;
+            while (slice != null) {
+                final Slice next = slice.next;
+                slice.arena = null;
+                push(slice, slice, stripe);
+                slice = next;
+            }
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<Arena, Object> returnedUpdater = AtomicReferenceFieldUpdater.newUpdater(Arena.class, Object.class, "returned");
+    private static final class ThreadLocalCache {
+
+        /**
+         * The pool of this cache, held weakly so that neither the owning thread nor its cache reference keeps the
+         * pool alive.
+         */
+        private final WeakReference<ByteBufferSlicePool> pool;
+
+        final ArrayDeque<Slice> queue;
 
         int outstanding = 0;
 
-        private ThreadLocalCache(ThreadLocal<ThreadLocalCache> threadLocal) {
-            this.threadLocal = threadLocal;
+        final int stripe = stripeSeq.getAndIncrement();
+
+        ThreadLocalCache(final ByteBufferSlicePool pool) {
+            this.pool = new WeakReference<ByteBufferSlicePool>(pool);
+            queue = new ArrayDeque<Slice>(pool.threadLocalQueueSize);
+        }
+
+        boolean isPoolReachable() {
+            return pool.get() != null;
+        }
+
+        /**
+         * Return the cached buffers to the shared stacks.  Called by the owning thread as it exits, or once it has
+         * been collected.
+         */
+        void release() {
+            final ByteBufferSlicePool pool = this.pool.get();
+            if (pool == null) {
+                queue.clear();
+                return;
+            }
+            Slice slice;
+            while ((slice = queue.poll()) != null) {
+                pool.push(slice, slice, stripe);
+            }
+        }
+
+        /**
+         * Drop this cache from the current thread, which is its owner.
+         */
+        void remove() {
+            final ByteBufferSlicePool pool = this.pool.get();
+            if (pool != null) {
+                pool.localQueueHolder.remove();
+            }
         }
     }
 }
@@ -138,15 +138,30 @@ public final class ChannelListeners {
      * @return the runnable task
      */
     public static <T extends Channel> Runnable getChannelListenerTask(final T channel, final ChannelListener<? super T> channelListener) {
-        return new Runnable() {
-            public String toString() {
-                return "Channel listener task for " + channel + " -> " + channelListener;
-            }
+        return new ChannelListenerTask<T>(channel, channelListener);
+    }
 
-            public void run() {
-                invokeChannelListener(channel, channelListener);
-            }
-        };
+    static final class ChannelListenerTask<T extends Channel> implements Runnable {
+
+        private final T channel;
+        private final ChannelListener<? super T> channelListener;
+
+        ChannelListenerTask(final T channel, final ChannelListener<? super T> channelListener) {
+            this.channel = channel;
+            this.channelListener = channelListener;
+        }
+
+        ChannelListener<? super T> getChannelListener() {
+            return channelListener;
+        }
+
+        public String toString() {
+            return "Channel listener task for " + channel + " -> " + channelListener;
+        }
+
+        public void run() {
+            invokeChannelListener(channel, channelListener);
+        }
     }
 
     /**
@@ -370,7 +385,8 @@ public final class ChannelListeners {
 
     /**
      * Get a channel listener which executes a delegate channel listener via an executor.  If an exception occurs
-     * submitting the task, the associated channel is closed.
+     * submitting the task, the associated channel is closed.  If the executor is an {@link XnioWorker} whose task
+     * queue is full, the worker's {@link Options#WORKER_TASK_OVERFLOW_POLICY} applies first.
      *
      * @param listener the listener to invoke
      * @param executor the executor with which to invoke the listener
@@ -381,7 +397,11 @@ public final class ChannelListeners {
         return new ChannelListener<T>() {
             public void handleEvent(final T channel) {
                 try {
-                    executor.execute(getChannelListenerTask(channel, listener));
+                    if (executor instanceof XnioWorker) {
+                        ((XnioWorker) executor).execute(getChannelListenerTask(channel, listener), channel);
+                    } else {
+                        executor.execute(getChannelListenerTask(channel, listener));
+                    }
                 } catch (RejectedExecutionException e) {
                     listenerMsg.executorSubmitFailed(e, channel);
                     IoUtils.safeClose(channel);
@@ -0,0 +1,51 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+/**
+ * Strategies for choosing the I/O thread of a worker to which a new channel is assigned.
+ *
+ * @see Options#WORKER_IO_THREAD_SELECTION
+ * @see Options#BALANCING_TOKEN_SELECTION
+ */
+public enum IoThreadSelection {
+    /**
+     * Choose a thread at random.
+     */
+    RANDOM,
+    /**
+     * Choose the thread with the fewest registered channels.
+     */
+    LEAST_KEYS,
+    /**
+     * Choose the thread whose channels have recently transferred the fewest bytes.
+     */
+    LEAST_BYTES,
+    /**
+     * Choose two threads at random, and take the one with fewer registered channels.  This balances nearly as well as
+     * {@link #LEAST_KEYS} without examining every thread, and avoids sending a burst of new channels to the same thread.
+     */
+    POWER_OF_TWO_CHOICES,
+    /**
+     * Choose the thread whose event loop most recently showed the least lag, that is, the thread which is quickest to
+     * get around to new work.
+     */
+    LEAST_LAG,
+    ;
+}
@@ -483,6 +483,54 @@ public final class Options {
     @Deprecated
     public static final Option<Integer> WORKER_WRITE_THREADS = Option.simple(Options.class, "WORKER_WRITE_THREADS", Integer.class);
 
+    /**
+     * Specify the number of microseconds for which an I/O thread should busy-poll its selector with non-blocking
+     * selects before falling back to a blocking select.  Busy polling trades CPU time for lower wakeup latency.  The
+     * default is 0, which disables busy polling.
+     */
+    public static final Option<Integer> WORKER_IO_BUSY_POLL = Option.simple(Options.class, "WORKER_IO_BUSY_POLL", Integer.class);
+
+    /**
+     * Specify whether an I/O thread which is busy-polling should hint to the processor that it is spinning between
+     * polls, on platforms which support such a hint.  The default is {@code true}.
+     */
+    public static final Option<Boolean> WORKER_IO_SPIN_WAIT = Option.simple(Options.class, "WORKER_IO_SPIN_WAIT", Boolean.class);
+
+    /**
+     * Specify the number of milliseconds for which an I/O thread may run a single channel handler or task before it is
+     * reported as stalled.  A stalled I/O thread cannot service any of its other channels.  The default is 0, which
+     * disables stall detection.
+     */
+    public static final Option<Integer> WORKER_IO_STALL_THRESHOLD = Option.simple(Options.class, "WORKER_IO_STALL_THRESHOLD", Integer.class);
+
+    /**
+     * Specify the maximum number of queued tasks an I/O thread runs before it checks its channels for readiness again,
+     * so that a steady stream of tasks cannot starve I/O.  The default is 1024; 0 means no limit.
+     */
+    public static final Option<Integer> WORKER_IO_TASK_BUDGET = Option.simple(Options.class, "WORKER_IO_TASK_BUDGET", Integer.class);
+
+    /**
+     * Specify the maximum number of ready channels an I/O thread handles before it runs queued tasks again; the rest
+     * are handled on the following pass.  The default is 0, which means no limit.
+     */
+    public static final Option<Integer> WORKER_IO_KEY_BUDGET = Option.simple(Options.class, "WORKER_IO_KEY_BUDGET", Integer.class);
+
+    /**
+     * Specify how a worker chooses the I/O thread for a new outbound connection, UDP channel, or pipe.  The default is
+     * {@link IoThreadSelection#RANDOM}.
+     */
+    public static final Option<IoThreadSelection> WORKER_IO_THREAD_SELECTION = Option.simple(Options.class, "WORKER_IO_THREAD_SELECTION", IoThreadSelection.class);
+
+    /**
+     * Specify the number of milliseconds between passes of the connection rebalancer, which moves a connection from
+     * the busiest I/O thread of a worker to the least busy one when their recent traffic is uneven.  An interval shorter
+     * than the period at which the traffic is sampled (one second by default) is raised to it.  The default is 0, which
+     * disables rebalancing.
+     *
+     * @see XnioWorker#migrateConnection(StreamConnection, XnioIoThread)
+     */
+    public static final Option<Integer> WORKER_IO_REBALANCE_INTERVAL = Option.simple(Options.class, "WORKER_IO_REBALANCE_INTERVAL", Integer.class);
+
     /**
      * Specify whether a server, acceptor, or connector should be attached to write threads.  By default, the establishing
      * phase of connections are attached to read threads.  Use this option if the client or server writes a message
@@ -491,11 +539,12 @@ public final class Options {
     public static final Option<Boolean> WORKER_ESTABLISH_WRITING = Option.simple(Options.class, "WORKER_ESTABLISH_WRITING", Boolean.class);
 
     /**
-     * Specify the number of accept threads a single socket server should have.  Specifying more than one can result in spurious wakeups
-     * for a socket server under low connection volume, but higher throughput at high connection volume.  The minimum value
-     * is 1, and the maximum value is equal to the number of available worker threads.
+     * Specify the number of dedicated accept threads a worker should have.  Accept threads only accept and configure
+     * new connections, handing each one off to an I/O thread chosen by {@link #WORKER_IO_THREAD_SELECTION}, which then
+     * calls the server's accept listener; this keeps accepts flowing during connection storms even when the I/O threads
+     * are busy.  When this option is given, {@link #BALANCING_TOKENS} is ignored.  The default, 0, accepts connections
+     * on the I/O threads themselves.
      */
-    @Deprecated
     public static final Option<Integer> WORKER_ACCEPT_THREADS = Option.simple(Options.class, "WORKER_ACCEPT_THREADS", Integer.class);
 
     /**
@@ -514,10 +563,22 @@ public final class Options {
     public static final Option<Integer> WORKER_TASK_KEEPALIVE = Option.simple(Options.class, "WORKER_TASK_KEEPALIVE", Integer.class);
 
     /**
-     * Specify the maximum number of worker tasks to allow before rejecting.
+     * Specify the kind of executor which runs a worker's tasks.  The default is {@link TaskPoolType#THREAD_POOL}.
+     */
+    public static final Option<TaskPoolType> WORKER_TASK_POOL_TYPE = Option.simple(Options.class, "WORKER_TASK_POOL_TYPE", TaskPoolType.class);
+
+    /**
+     * Specify the maximum number of worker tasks to queue before the {@linkplain #WORKER_TASK_OVERFLOW_POLICY overflow
+     * policy} applies.  The default is unbounded.
      */
     public static final Option<Integer> WORKER_TASK_LIMIT = Option.simple(Options.class, "WORKER_TASK_LIMIT", Integer.class);
 
+    /**
+     * Specify what a worker does with tasks beyond its {@link #WORKER_TASK_LIMIT}.  The default is
+     * {@link TaskOverflowPolicy#REJECT}.
+     */
+    public static final Option<TaskOverflowPolicy> WORKER_TASK_OVERFLOW_POLICY = Option.simple(Options.class, "WORKER_TASK_OVERFLOW_POLICY", TaskOverflowPolicy.class);
+
     /**
      * Specify that output should be buffered.  The exact behavior of the buffering is not specified; it may flush based
      * on buffered size or time.  An explicit {@link SuspendableWriteChannel#flush()} will still cause
@@ -558,6 +619,55 @@ public final class Options {
      */
     public static final Option<Integer> BALANCING_CONNECTIONS = Option.simple(Options.class, "BALANCING_CONNECTIONS", Integer.class);
 
+    /**
+     * Specify how a balancing token is passed on once its connections are used up, if connection-balancing is
+     * enabled.  By default the token goes to the next I/O thread in turn, whatever its load.  With a selection, it goes
+     * to the least loaded thread by that measure which does not already hold a token: {@link IoThreadSelection#LEAST_KEYS}
+     * for the fewest live channels, or {@link IoThreadSelection#LEAST_LAG} for the least event loop lag, for example.
+     * {@link IoThreadSelection#POWER_OF_TWO_CHOICES} compares only two threads chosen at random.
+     */
+    public static final Option<IoThreadSelection> BALANCING_TOKEN_SELECTION = Option.simple(Options.class, "BALANCING_TOKEN_SELECTION", IoThreadSelection.class);
+
+    /**
+     * Specify whether a TCP server should open one listening socket per I/O thread, all bound to the same address with
+     * {@code SO_REUSEPORT}, so that the operating system spreads new connections across the threads rather than every
+     * thread competing to accept from a single socket.  Ignored where {@code SO_REUSEPORT} is not available.  A
+     * connection which the operating system queues for a thread whose accepts are suspended, for example because the
+     * thread has reached its share of {@link #CONNECTION_HIGH_WATER}, waits for that thread.  May not be combined with
+     * {@link #BALANCING_TOKENS}.
+     */
+    public static final Option<Boolean> ACCEPT_SHARDING = Option.simple(Options.class, "ACCEPT_SHARDING", Boolean.class);
+
+    /**
+     * The maximum number of connections a TCP server accepts for each accept readiness event.  With a value above 1,
+     * the accept listener is called again for as long as it keeps accepting connections, up to this limit, instead of
+     * waiting for another select; the connection limits still apply.  The default is 1, or 64 on a worker with
+     * {@link #WORKER_ACCEPT_THREADS}, which always accept in batches.
+     */
+    public static final Option<Integer> ACCEPT_BATCH_SIZE = Option.simple(Options.class, "ACCEPT_BATCH_SIZE", Integer.class);
+
+    /**
+     * Specify an event loop lag, in milliseconds, at which a TCP server stops accepting connections on an I/O thread.
+     * Accepts resume on that thread once its lag drops below half of this value.  On a worker with
+     * {@link #WORKER_ACCEPT_THREADS}, the accept threads stop accepting while any I/O thread is at this lag.  The
+     * default is 0, which means accepts are not throttled by lag.
+     */
+    public static final Option<Integer> ACCEPT_THROTTLE_LAG = Option.simple(Options.class, "ACCEPT_THROTTLE_LAG", Integer.class);
+
+    /**
+     * Specify a number of queued tasks at which a TCP server stops accepting connections on an I/O thread.  Accepts
+     * resume on that thread once its queue drops below half of this value.  On a worker with
+     * {@link #WORKER_ACCEPT_THREADS}, the accept threads stop accepting while any I/O thread has this many queued
+     * tasks.  The default is 0, which means accepts are not throttled by the task queue.
+     */
+    public static final Option<Integer> ACCEPT_THROTTLE_TASKS = Option.simple(Options.class, "ACCEPT_THROTTLE_TASKS", Integer.class);
+
+    /**
+     * Specify the maximum number of open connections a TCP server accepts from any one peer address.  Further
+     * connections from that address are closed as soon as they are accepted.  The default is no limit.
+     */
+    public static final Option<Integer> CONNECTION_LIMIT_PER_ADDRESS = Option.simple(Options.class, "CONNECTION_LIMIT_PER_ADDRESS", Integer.class);
+
     /**
      * The poll interval for poll based file system watchers.  Defaults to 5000ms.  Ignored on Java 7 and later.
      */
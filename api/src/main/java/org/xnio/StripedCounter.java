@@ -0,0 +1,66 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A statistics counter which many threads add to at once.  Each thread adds to one of several cells, chosen by its
+ * thread ID and spaced a cache line apart, so that threads on different cores seldom contend; reading the counter sums
+ * the cells, and is not an atomic snapshot.
+ */
+final class StripedCounter {
+
+    /**
+     * The number of longs between cells, so that each cell has a cache line of its own.
+     */
+    private static final int STRIDE = 8;
+    private static final int CELLS;
+
+    static {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        CELLS = Math.min(64, Integer.highestOneBit(Math.max(1, processors - 1)) << 1);
+    }
+
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS * STRIDE);
+
+    private static int index() {
+        return ((int) Thread.currentThread().getId() & CELLS - 1) * STRIDE;
+    }
+
+    void add(final long value) {
+        cells.getAndAdd(index(), value);
+    }
+
+    void increment() {
+        cells.getAndIncrement(index());
+    }
+
+    void decrement() {
+        cells.getAndDecrement(index());
+    }
+
+    long sum() {
+        long sum = 0L;
+        for (int i = 0; i < CELLS; i ++) {
+            sum += cells.get(i * STRIDE);
+        }
+        return sum;
+    }
+}
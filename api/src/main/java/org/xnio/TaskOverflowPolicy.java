@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+/**
+ * What a worker does with a task which arrives when its task queue is full.
+ *
+ * @see Options#WORKER_TASK_LIMIT
+ * @see Options#WORKER_TASK_OVERFLOW_POLICY
+ */
+public enum TaskOverflowPolicy {
+    /**
+     * Reject the task with a {@link java.util.concurrent.RejectedExecutionException}.
+     */
+    REJECT,
+    /**
+     * Run the task in the submitting thread, which is usually an I/O thread.  This slows the producer to the pace of
+     * the pool at the cost of stalling the other channels of that thread.
+     */
+    CALLER_RUNS,
+    /**
+     * When the task is submitted by a listener from {@link ChannelListeners#executorChannelListener(ChannelListener, java.util.concurrent.Executor)},
+     * drop it and suspend reads (or accepts) on its channel until the queue has drained to half of its limit; the
+     * channel's listener then runs again for the data still waiting.  Other tasks are rejected as with {@link #REJECT}.
+     */
+    SUSPEND_READS,
+    ;
+}
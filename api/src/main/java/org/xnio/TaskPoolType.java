@@ -0,0 +1,43 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+/**
+ * The kinds of executor a worker can run its tasks on.
+ *
+ * @see Options#WORKER_TASK_POOL_TYPE
+ */
+public enum TaskPoolType {
+    /**
+     * A fixed pool of {@link Options#WORKER_TASK_MAX_THREADS} platform threads over an unbounded queue.
+     */
+    THREAD_POOL,
+    /**
+     * A work-stealing {@link java.util.concurrent.ForkJoinPool} with a parallelism of
+     * {@link Options#WORKER_TASK_MAX_THREADS}, which suits many short, non-blocking tasks.  Its size cannot be changed
+     * once the worker is created, and {@link Options#WORKER_TASK_KEEPALIVE} is ignored.
+     */
+    FORK_JOIN,
+    /**
+     * A new virtual thread for every task, so that tasks which block cost no platform thread while they wait.  This
+     * requires Java 21 or later.  The task thread options are ignored.
+     */
+    VIRTUAL_THREADS,
+    ;
+}
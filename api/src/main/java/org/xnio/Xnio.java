@@ -46,6 +46,8 @@ import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
 import javax.management.NotCompliantMBeanException;
 import javax.management.ObjectName;
+import org.xnio.management.BufferPoolMXBean;
+import org.xnio.management.XnioIoThreadMXBean;
 import org.xnio.management.XnioProviderMXBean;
 import org.xnio.management.XnioServerMXBean;
 import org.xnio.management.XnioWorkerMXBean;
@@ -585,6 +587,38 @@ public abstract class Xnio {
         }
     }
 
+    /**
+     * Register an MBean.  If the MBean cannot be registered, this method will simply return.
+     *
+     * @param ioThreadMXBean the I/O thread MBean to register
+     * @return a handle which may be used to remove the registration
+     */
+    protected static Closeable register(XnioIoThreadMXBean ioThreadMXBean) {
+        try {
+            final ObjectName objectName = new ObjectName("org.xnio", ObjectProperties.properties(ObjectProperties.property("type", "Xnio"), ObjectProperties.property("provider", ObjectName.quote(ioThreadMXBean.getProviderName())), ObjectProperties.property("worker", ObjectName.quote(ioThreadMXBean.getWorkerName())), ObjectProperties.property("thread", ObjectName.quote(ioThreadMXBean.getName()))));
+            MBEAN_SERVER.registerMBean(ioThreadMXBean, objectName);
+            return new MBeanCloseable(objectName);
+        } catch (Exception ignored) {
+            return IoUtils.nullCloseable();
+        }
+    }
+
+    /**
+     * Register an MBean.  If the MBean cannot be registered, this method will simply return.
+     *
+     * @param bufferPoolMXBean the buffer pool MBean to register
+     * @return a handle which may be used to remove the registration
+     */
+    protected static Closeable register(BufferPoolMXBean bufferPoolMXBean) {
+        try {
+            final ObjectName objectName = new ObjectName("org.xnio", ObjectProperties.properties(ObjectProperties.property("type", "BufferPool"), ObjectProperties.property("name", ObjectName.quote(bufferPoolMXBean.getName()))));
+            MBEAN_SERVER.registerMBean(bufferPoolMXBean, objectName);
+            return new MBeanCloseable(objectName);
+        } catch (Exception ignored) {
+            return IoUtils.nullCloseable();
+        }
+    }
+
     static class MBeanCloseable extends AtomicBoolean implements Closeable {
 
         private final ObjectName objectName;
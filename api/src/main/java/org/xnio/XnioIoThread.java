@@ -39,6 +39,13 @@ public abstract class XnioIoThread extends Thread implements XnioExecutor, XnioI
     private final XnioWorker worker;
     private final int number;
 
+    /**
+     * The buffer arenas of this thread, indexed by pool; only this thread touches them.
+     */
+    ByteBufferSlicePool.Arena[] bufferArenas = NO_ARENAS;
+
+    private static final ByteBufferSlicePool.Arena[] NO_ARENAS = new ByteBufferSlicePool.Arena[0];
+
     /**
      * Construct a new instance.
      *
@@ -92,6 +99,21 @@ public abstract class XnioIoThread extends Thread implements XnioExecutor, XnioI
         this.worker = worker;
     }
 
+    /**
+     * Return the buffers cached in this thread's buffer pool arenas and thread-local caches to their pools.
+     * Implementations call this from the thread itself as it exits.
+     */
+    protected void releaseBufferArenas() {
+        final ByteBufferSlicePool.Arena[] arenas = bufferArenas;
+        bufferArenas = NO_ARENAS;
+        for (ByteBufferSlicePool.Arena arena : arenas) {
+            if (arena != null) {
+                arena.release();
+            }
+        }
+        ByteBufferSlicePool.releaseThreadCaches();
+    }
+
     /**
      * Get the current XNIO thread.  If the current thread is not an XNIO thread, {@code null} is returned.
      *
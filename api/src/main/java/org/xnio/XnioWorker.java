@@ -22,19 +22,37 @@ package org.xnio;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.nio.channels.Channel;
 import java.security.PrivilegedAction;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.AbstractExecutorService;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.zip.Deflater;
 import java.util.zip.Inflater;
 import org.xnio.channels.AcceptingChannel;
@@ -48,6 +66,8 @@ import org.xnio.channels.MulticastMessageChannel;
 import org.xnio.channels.StreamChannel;
 import org.xnio.channels.StreamSinkChannel;
 import org.xnio.channels.StreamSourceChannel;
+import org.xnio.channels.SuspendableAcceptChannel;
+import org.xnio.channels.SuspendableReadChannel;
 import org.xnio.conduits.ConduitStreamSinkChannel;
 import org.xnio.conduits.ConduitStreamSourceChannel;
 import org.xnio.conduits.DeflatingStreamSinkConduit;
@@ -70,19 +90,49 @@ import static org.xnio._private.Messages.msg;
 public abstract class XnioWorker extends AbstractExecutorService implements Configurable, ExecutorService, XnioIoFactory {
 
     private final Xnio xnio;
-    private final TaskPool taskPool;
+    private final ExecutorService taskPool;
+    private final TaskPoolType taskPoolType;
+    private final int taskKeepAlive;
     private final String name;
     private final Runnable terminationTask;
 
+    private final int taskLimit;
+    private final TaskOverflowPolicy taskOverflowPolicy;
+    /**
+     * One in this many tasks is timed, for the wait and run time statistics and the per-class attribution.
+     */
+    private final int taskSampleInterval;
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    private final ConcurrentLinkedQueue<Channel> drainWaiters = new ConcurrentLinkedQueue<Channel>();
+    private final StripedCounter startedTaskCount = new StripedCounter();
+    private final StripedCounter taskWaitTime = new StripedCounter();
+    private final StripedCounter activeTaskCount = new StripedCounter();
+    private final StripedCounter completedTaskCount = new StripedCounter();
+    private final TimeHistogram taskWaitTimeHistogram = new TimeHistogram();
+    private final TimeHistogram taskRunTimeHistogram = new TimeHistogram();
+    private final ConcurrentHashMap<String, AtomicLong> taskClassRunTimes = new ConcurrentHashMap<String, AtomicLong>();
+
     private volatile int taskSeq;
     private volatile int coreSize;
+    private volatile int queueHighWater;
+    private volatile long maxTaskWaitTime;
+    private volatile long rejectedTaskCount;
 
     private static final AtomicIntegerFieldUpdater<XnioWorker> taskSeqUpdater = AtomicIntegerFieldUpdater.newUpdater(XnioWorker.class, "taskSeq");
     private static final AtomicIntegerFieldUpdater<XnioWorker> coreSizeUpdater = AtomicIntegerFieldUpdater.newUpdater(XnioWorker.class, "coreSize");
+    private static final AtomicIntegerFieldUpdater<XnioWorker> queueHighWaterUpdater = AtomicIntegerFieldUpdater.newUpdater(XnioWorker.class, "queueHighWater");
+    private static final AtomicLongFieldUpdater<XnioWorker> maxTaskWaitTimeUpdater = AtomicLongFieldUpdater.newUpdater(XnioWorker.class, "maxTaskWaitTime");
+    private static final AtomicLongFieldUpdater<XnioWorker> rejectedTaskCountUpdater = AtomicLongFieldUpdater.newUpdater(XnioWorker.class, "rejectedTaskCount");
 
     private static final AtomicInteger seq = new AtomicInteger(1);
 
     private static final RuntimePermission CREATE_WORKER_PERMISSION = new RuntimePermission("createXnioWorker");
+
+    private static final int TOP_TASK_CLASSES;
+
+    static {
+        TOP_TASK_CLASSES = Integer.parseInt(doPrivileged(new ReadPropertyAction("xnio.worker.top-task-classes", "10")));
+    }
     private final BlockingQueue<Runnable> taskQueue;
 
     private int getNextSeq() {
@@ -110,17 +160,52 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
             workerName = "XNIO-" + seq.getAndIncrement();
         }
         name = workerName;
-        taskQueue = new LinkedBlockingQueue<Runnable>();
+        taskLimit = optionMap.get(Options.WORKER_TASK_LIMIT, Integer.MAX_VALUE);
+        if (taskLimit < 1) {
+            throw msg.optionOutOfRange("WORKER_TASK_LIMIT");
+        }
+        taskOverflowPolicy = optionMap.get(Options.WORKER_TASK_OVERFLOW_POLICY, TaskOverflowPolicy.REJECT);
+        taskSampleInterval = Math.max(1, Integer.parseInt(doPrivileged(new ReadPropertyAction("xnio.worker.task-sample-interval", "16"))));
+        taskQueue = new LinkedBlockingQueue<Runnable>(taskLimit);
         this.coreSize = optionMap.get(Options.WORKER_TASK_CORE_THREADS, 4);
         final boolean markThreadAsDaemon = optionMap.get(Options.THREAD_DAEMON, false);
         final int threadCount = optionMap.get(Options.WORKER_TASK_MAX_THREADS, 16);
-        taskPool = new TaskPool(
-            threadCount, // ignore core threads setting, always fill to max
-            threadCount,
-            optionMap.get(Options.WORKER_TASK_KEEPALIVE, 60000), TimeUnit.MILLISECONDS,
-            taskQueue,
-            new WorkerThreadFactory(threadGroup, optionMap, markThreadAsDaemon),
-            new ThreadPoolExecutor.AbortPolicy());
+        taskKeepAlive = optionMap.get(Options.WORKER_TASK_KEEPALIVE, 60000);
+        taskPoolType = optionMap.get(Options.WORKER_TASK_POOL_TYPE, TaskPoolType.THREAD_POOL);
+        switch (taskPoolType) {
+            case FORK_JOIN: {
+                taskPool = new ExecutorTaskPool(new ForkJoinPool(threadCount, new WorkerForkJoinThreadFactory(markThreadAsDaemon), null, true), threadCount);
+                break;
+            }
+            case VIRTUAL_THREADS: {
+                taskPool = new ExecutorTaskPool(newVirtualThreadExecutor(name + " task-"), Integer.MAX_VALUE);
+                break;
+            }
+            default: {
+                taskPool = new TaskPool(
+                    threadCount, // ignore core threads setting, always fill to max
+                    threadCount,
+                    taskKeepAlive, TimeUnit.MILLISECONDS,
+                    taskQueue,
+                    new WorkerThreadFactory(threadGroup, optionMap, markThreadAsDaemon),
+                    new ThreadPoolExecutor.AbortPolicy());
+                break;
+            }
+        }
+    }
+
+    private static ExecutorService newVirtualThreadExecutor(final String namePrefix) {
+        // reflective, so that this class still loads on runtimes without virtual threads
+        try {
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, Long.valueOf(1L));
+            final ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (Exception e) {
+            // not present, or present only as a preview feature
+            throw msg.virtualThreadsUnavailable();
+        }
     }
 
     //==================================================
@@ -729,16 +814,167 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
      * @return the pending task list
      */
     protected List<Runnable> shutDownTaskPoolNow() {
-        return taskPool.shutdownNow();
+        final List<Runnable> tasks = taskPool.shutdownNow();
+        final List<Runnable> commands = new ArrayList<Runnable>(tasks.size());
+        for (Runnable task : tasks) {
+            if (task instanceof WorkerTask) {
+                if (! (taskPool instanceof TaskPool)) {
+                    pendingTasks.decrementAndGet();
+                }
+                commands.add(((WorkerTask) task).command);
+            } else {
+                commands.add(task);
+            }
+        }
+        return commands;
     }
 
     /**
-     * Execute a command in the task pool.
+     * Execute a command in the task pool.  If the task queue is full, the {@link Options#WORKER_TASK_OVERFLOW_POLICY}
+     * applies.
      *
      * @param command the command to run
      */
     public void execute(final Runnable command) {
-        taskPool.execute(command);
+        if (! offer(command)) {
+            overflow(command);
+        }
+    }
+
+    /**
+     * Execute a command on behalf of a channel's listener.  If the queue is full and the overflow policy is
+     * {@link TaskOverflowPolicy#SUSPEND_READS}, the command is dropped and reads or accepts on the channel are
+     * suspended until the queue drains.
+     *
+     * @param command the command to run
+     * @param channel the channel whose listener submitted the command
+     */
+    void execute(final Runnable command, final Channel channel) {
+        if (offer(command)) {
+            return;
+        }
+        if (taskOverflowPolicy != TaskOverflowPolicy.SUSPEND_READS || taskPool.isShutdown() || ! (channel instanceof SuspendableReadChannel || channel instanceof SuspendableAcceptChannel)) {
+            overflow(command);
+            return;
+        }
+        rejectedTaskCountUpdater.incrementAndGet(this);
+        if (channel instanceof SuspendableReadChannel) {
+            ((SuspendableReadChannel) channel).suspendReads();
+        } else {
+            ((SuspendableAcceptChannel) channel).suspendAccepts();
+        }
+        drainWaiters.add(channel);
+        // the queue may have drained before the channel was added
+        if (getWorkerQueueSize() <= taskLimit >> 1) {
+            resumeDrainWaiters();
+        }
+    }
+
+    private boolean offer(final Runnable command) {
+        final int interval = taskSampleInterval;
+        final WorkerTask task = new WorkerTask(command, interval == 1 || ThreadLocalRandom.current().nextInt(interval) == 0);
+        if (taskPool instanceof TaskPool) {
+            if (taskQueue.remainingCapacity() == 0 && ! taskPool.isShutdown()) {
+                return false;
+            }
+            try {
+                taskPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                if (taskPool.isShutdown()) {
+                    throw e;
+                }
+                return false;
+            }
+            updateQueueHighWater(taskQueue.size());
+        } else {
+            final int pending = pendingTasks.incrementAndGet();
+            if (pending > taskLimit && ! taskPool.isShutdown()) {
+                pendingTasks.decrementAndGet();
+                return false;
+            }
+            try {
+                taskPool.execute(task);
+            } catch (RejectedExecutionException e) {
+                pendingTasks.decrementAndGet();
+                throw e;
+            }
+            updateQueueHighWater(pending);
+        }
+        return true;
+    }
+
+    private void overflow(final Runnable command) {
+        rejectedTaskCountUpdater.incrementAndGet(this);
+        if (taskOverflowPolicy == TaskOverflowPolicy.CALLER_RUNS && ! taskPool.isShutdown()) {
+            command.run();
+        } else {
+            throw msg.taskQueueFull();
+        }
+    }
+
+    private void updateQueueHighWater(final int size) {
+        int oldVal;
+        do {
+            oldVal = queueHighWater;
+            if (size <= oldVal) {
+                return;
+            }
+        } while (! queueHighWaterUpdater.compareAndSet(this, oldVal, size));
+    }
+
+    void taskStarted() {
+        if (! (taskPool instanceof TaskPool)) {
+            pendingTasks.decrementAndGet();
+        }
+        activeTaskCount.increment();
+        startedTaskCount.increment();
+        if (! drainWaiters.isEmpty() && getWorkerQueueSize() <= taskLimit >> 1) {
+            resumeDrainWaiters();
+        }
+    }
+
+    void taskCompleted() {
+        activeTaskCount.decrement();
+        completedTaskCount.increment();
+    }
+
+    void recordTaskWaitTime(final long waitTime) {
+        taskWaitTime.add(waitTime);
+        taskWaitTimeHistogram.record(waitTime);
+        long oldVal;
+        do {
+            oldVal = maxTaskWaitTime;
+            if (waitTime <= oldVal) {
+                break;
+            }
+        } while (! maxTaskWaitTimeUpdater.compareAndSet(this, oldVal, waitTime));
+    }
+
+    void recordTaskRunTime(final Runnable command, final long runTime) {
+        taskRunTimeHistogram.record(runTime);
+        // attribute listener tasks to the listener, which says more than the task wrapper
+        final Class<?> taskClass = command instanceof ChannelListeners.ChannelListenerTask ? ((ChannelListeners.ChannelListenerTask<?>) command).getChannelListener().getClass() : command.getClass();
+        // keyed by name so that the statistics do not pin class loaders
+        final String name = taskClass.getName();
+        AtomicLong total = taskClassRunTimes.get(name);
+        if (total == null) {
+            final AtomicLong appearing = taskClassRunTimes.putIfAbsent(name, total = new AtomicLong());
+            if (appearing != null) {
+                total = appearing;
+            }
+        }
+        total.addAndGet(runTime);
+    }
+
+    private void resumeDrainWaiters() {
+        Channel channel;
+        while ((channel = drainWaiters.poll()) != null) {
+            if (channel instanceof SuspendableReadChannel) {
+                ((SuspendableReadChannel) channel).resumeReads();
+            } else {
+                ((SuspendableAcceptChannel) channel).resumeAccepts();
+            }
+        }
     }
 
     /**
@@ -748,6 +984,22 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
      */
     public abstract int getIoThreadCount();
 
+    /**
+     * Move a connection of this worker to another of its I/O threads.  The connection keeps its readiness, its resumed
+     * or suspended state, and its timeouts, and its listeners are afterwards called from the new thread.  The move
+     * completes asynchronously, without either thread waiting for the other; a call made while a move of the same
+     * connection is still in progress is ignored.
+     *
+     * @param connection the connection to move
+     * @param thread the I/O thread of this worker to move it to
+     * @throws IOException if the connection could not be moved
+     * @throws IllegalArgumentException if the connection or the thread does not belong to this worker
+     * @throws UnsupportedOperationException if this implementation cannot move connections
+     */
+    public void migrateConnection(StreamConnection connection, XnioIoThread thread) throws IOException {
+        throw msg.unsupported("migrateConnection");
+    }
+
     //==================================================
     //
     // Configuration methods
@@ -758,6 +1010,7 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
             .add(Options.WORKER_TASK_CORE_THREADS)
             .add(Options.WORKER_TASK_MAX_THREADS)
             .add(Options.WORKER_TASK_KEEPALIVE)
+            .add(Options.WORKER_TASK_POOL_TYPE)
             .create();
 
     public boolean supportsOption(final Option<?> option) {
@@ -768,9 +1021,14 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
         if (option.equals(Options.WORKER_TASK_CORE_THREADS)) {
             return option.cast(Integer.valueOf(coreSize));
         } else if (option.equals(Options.WORKER_TASK_MAX_THREADS)) {
-            return option.cast(Integer.valueOf(taskPool.getMaximumPoolSize()));
+            return option.cast(Integer.valueOf(getMaxWorkerPoolSize()));
         } else if (option.equals(Options.WORKER_TASK_KEEPALIVE)) {
-            return option.cast(Integer.valueOf((int) Math.min((long) Integer.MAX_VALUE, taskPool.getKeepAliveTime(TimeUnit.MILLISECONDS))));
+            if (! (taskPool instanceof TaskPool)) {
+                return option.cast(Integer.valueOf(taskKeepAlive));
+            }
+            return option.cast(Integer.valueOf((int) Math.min((long) Integer.MAX_VALUE, ((TaskPool) taskPool).getKeepAliveTime(TimeUnit.MILLISECONDS))));
+        } else if (option.equals(Options.WORKER_TASK_POOL_TYPE)) {
+            return option.cast(taskPoolType);
         } else {
             return null;
         }
@@ -779,12 +1037,18 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
     public <T> T setOption(final Option<T> option, final T value) throws IllegalArgumentException, IOException {
         if (option.equals(Options.WORKER_TASK_CORE_THREADS)) {
             return option.cast(Integer.valueOf(coreSizeUpdater.getAndSet(this, Options.WORKER_TASK_CORE_THREADS.cast(value).intValue())));
-        } else if (option.equals(Options.WORKER_TASK_MAX_THREADS)) {
-            final int old = taskPool.getMaximumPoolSize();
-            taskPool.setCorePoolSize(Options.WORKER_TASK_MAX_THREADS.cast(value).intValue());
-            taskPool.setMaximumPoolSize(Options.WORKER_TASK_MAX_THREADS.cast(value).intValue());
-            return option.cast(Integer.valueOf(old));
-        } else if (option.equals(Options.WORKER_TASK_KEEPALIVE)) {
+        } else if (option.equals(Options.WORKER_TASK_MAX_THREADS) || option.equals(Options.WORKER_TASK_KEEPALIVE)) {
+            if (! (taskPool instanceof TaskPool)) {
+                // the other pool types cannot be resized once created
+                return getOption(option);
+            }
+            final TaskPool taskPool = (TaskPool) this.taskPool;
+            if (option.equals(Options.WORKER_TASK_MAX_THREADS)) {
+                final int old = taskPool.getMaximumPoolSize();
+                taskPool.setCorePoolSize(Options.WORKER_TASK_MAX_THREADS.cast(value).intValue());
+                taskPool.setMaximumPoolSize(Options.WORKER_TASK_MAX_THREADS.cast(value).intValue());
+                return option.cast(Integer.valueOf(old));
+            }
             final long old = taskPool.getKeepAliveTime(TimeUnit.MILLISECONDS);
             taskPool.setKeepAliveTime(Options.WORKER_TASK_KEEPALIVE.cast(value).intValue(), TimeUnit.MILLISECONDS);
             return option.cast(Integer.valueOf((int) Math.min((long) Integer.MAX_VALUE, old)));
@@ -845,7 +1109,10 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
      * @return the maximum worker pool size
      */
     protected final int getMaxWorkerPoolSize() {
-        return taskPool.getMaximumPoolSize();
+        if (taskPool instanceof TaskPool) {
+            return ((TaskPool) taskPool).getMaximumPoolSize();
+        }
+        return ((ExecutorTaskPool) taskPool).maximumPoolSize;
     }
 
     /**
@@ -854,7 +1121,122 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
      * @return the estimated number of tasks
      */
     protected final int getWorkerQueueSize() {
-        return taskQueue.size();
+        if (taskPool instanceof TaskPool) {
+            return taskQueue.size();
+        }
+        return pendingTasks.get();
+    }
+
+    /**
+     * Get the largest number of tasks which have been waiting in the worker queue at once.
+     *
+     * @return the queue high water mark
+     */
+    protected final int getWorkerQueueHighWater() {
+        return queueHighWater;
+    }
+
+    /**
+     * Get the number of tasks which found the worker queue full, however the overflow policy then handled them.
+     *
+     * @return the rejected task count
+     */
+    protected final long getRejectedTaskCount() {
+        return rejectedTaskCount;
+    }
+
+    /**
+     * Get the number of tasks which have started to run in the task pool.
+     *
+     * @return the started task count
+     */
+    protected final long getStartedTaskCount() {
+        return startedTaskCount.sum();
+    }
+
+    /**
+     * Get an estimate of the total time which the {@linkplain #getStartedTaskCount() started tasks} spent waiting in
+     * the worker queue, in nanoseconds.  Only a sample of the tasks is timed, and the total is scaled up from it.
+     *
+     * @return the total task wait time
+     */
+    protected final long getTaskWaitTime() {
+        return taskWaitTime.sum() * taskSampleInterval;
+    }
+
+    /**
+     * Get the longest time which a single timed task spent waiting in the worker queue, in nanoseconds.
+     *
+     * @return the maximum task wait time
+     */
+    protected final long getMaxTaskWaitTime() {
+        return maxTaskWaitTime;
+    }
+
+    /**
+     * Get a histogram of the time which started tasks spent waiting in the worker queue.  Element 0 counts waits
+     * under one microsecond, element {@code i} counts those from 2<sup>i-1</sup> up to 2<sup>i</sup> microseconds,
+     * and the last element also counts every longer wait.  The counts are scaled up from the sample of timed tasks.
+     *
+     * @return the task wait time histogram
+     */
+    protected final long[] getTaskWaitTimeHistogram() {
+        return taskWaitTimeHistogram.get(taskSampleInterval);
+    }
+
+    /**
+     * Get a histogram of the time which completed tasks spent running, with the buckets of
+     * {@link #getTaskWaitTimeHistogram()}.
+     *
+     * @return the task run time histogram
+     */
+    protected final long[] getTaskRunTimeHistogram() {
+        return taskRunTimeHistogram.get(taskSampleInterval);
+    }
+
+    /**
+     * Get an estimate of the number of task pool threads which are running a task.
+     *
+     * @return the active task count
+     */
+    protected final int getActiveTaskCount() {
+        return (int) Math.max(0L, activeTaskCount.sum());
+    }
+
+    /**
+     * Get the number of tasks which have finished running, normally or not.
+     *
+     * @return the completed task count
+     */
+    protected final long getCompletedTaskCount() {
+        return completedTaskCount.sum();
+    }
+
+    /**
+     * Get the task classes which have spent the most time running, mapped to an estimate of that time in nanoseconds
+     * and ordered from the most.  Tasks which run a channel listener are attributed to the listener's class.  Only a
+     * sample of the tasks is attributed, so the estimate is coarse for classes which run rarely.
+     *
+     * @return the top task classes by run time
+     */
+    protected final Map<String, Long> getTopTaskClassRunTimes() {
+        final List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(taskClassRunTimes.size());
+        for (Map.Entry<String, AtomicLong> entry : taskClassRunTimes.entrySet()) {
+            entries.add(new AbstractMap.SimpleImmutableEntry<String, Long>(entry.getKey(), Long.valueOf(entry.getValue().get() * taskSampleInterval)));
+        }
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(final Map.Entry<String, Long> o1, final Map.Entry<String, Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        final Map<String, Long> top = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries) {
+            if (top.size() == TOP_TASK_CLASSES) {
+                break;
+            }
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
     }
 
     final class TaskPool extends ThreadPoolExecutor {
@@ -868,6 +1250,122 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
         }
     }
 
+    /**
+     * A task pool over an executor which has neither a visible queue nor a termination callback.
+     */
+    final class ExecutorTaskPool extends AbstractExecutorService {
+
+        private final ExecutorService delegate;
+        private final int maximumPoolSize;
+        private final AtomicBoolean shutdown = new AtomicBoolean();
+
+        ExecutorTaskPool(final ExecutorService delegate, final int maximumPoolSize) {
+            this.delegate = delegate;
+            this.maximumPoolSize = maximumPoolSize;
+        }
+
+        public void execute(final Runnable command) {
+            delegate.execute(command);
+        }
+
+        public void shutdown() {
+            delegate.shutdown();
+            awaitTerminated();
+        }
+
+        public List<Runnable> shutdownNow() {
+            final List<Runnable> tasks = delegate.shutdownNow();
+            awaitTerminated();
+            return tasks;
+        }
+
+        public boolean isShutdown() {
+            return delegate.isShutdown();
+        }
+
+        public boolean isTerminated() {
+            return delegate.isTerminated();
+        }
+
+        public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+            return delegate.awaitTermination(timeout, unit);
+        }
+
+        private void awaitTerminated() {
+            if (! shutdown.compareAndSet(false, true)) {
+                return;
+            }
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        while (! delegate.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) {}
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    taskPoolTerminated();
+                }
+            }, name + " task pool termination");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    final class WorkerTask implements Runnable {
+
+        private final Runnable command;
+        /**
+         * Whether this is one of the sampled tasks which are timed.
+         */
+        private final boolean timed;
+        private final long queuedTime;
+
+        WorkerTask(final Runnable command, final boolean timed) {
+            this.command = command;
+            this.timed = timed;
+            queuedTime = timed ? System.nanoTime() : 0L;
+        }
+
+        public void run() {
+            taskStarted();
+            if (! timed) {
+                try {
+                    command.run();
+                } finally {
+                    taskCompleted();
+                }
+                return;
+            }
+            final long startTime = System.nanoTime();
+            recordTaskWaitTime(startTime - queuedTime);
+            try {
+                command.run();
+            } finally {
+                // recorded first, so that a task counted as completed is always in the statistics
+                recordTaskRunTime(command, System.nanoTime() - startTime);
+                taskCompleted();
+            }
+        }
+    }
+
+    static final class TimeHistogram {
+
+        private final AtomicLongArray buckets = new AtomicLongArray(24);
+
+        void record(final long nanos) {
+            final long micros = nanos / 1000L;
+            buckets.getAndIncrement(Math.min(64 - Long.numberOfLeadingZeros(micros), buckets.length() - 1));
+        }
+
+        long[] get(final int scale) {
+            final long[] histogram = new long[buckets.length()];
+            for (int i = 0; i < histogram.length; i++) {
+                histogram[i] = buckets.get(i) * scale;
+            }
+            return histogram;
+        }
+    }
+
     static class StreamConnectionWrapListener implements ChannelListener<StreamConnection> {
 
         private final FutureResult<ConnectedStreamChannel> futureResult;
@@ -928,6 +1426,56 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
         }
     };
 
+    class WorkerForkJoinThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final boolean markThreadAsDaemon;
+
+        WorkerForkJoinThreadFactory(final boolean markThreadAsDaemon) {
+            this.markThreadAsDaemon = markThreadAsDaemon;
+        }
+
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+            return doPrivileged(new PrivilegedAction<ForkJoinWorkerThread>() {
+                public ForkJoinWorkerThread run() {
+                    final ForkJoinWorkerThread taskThread = new WorkerForkJoinThread(pool);
+                    taskThread.setName(name + " task-" + getNextSeq());
+                    taskThread.setDaemon(markThreadAsDaemon);
+                    return taskThread;
+                }
+            });
+        }
+    }
+
+    static final class WorkerForkJoinThread extends ForkJoinWorkerThread {
+
+        WorkerForkJoinThread(final ForkJoinPool pool) {
+            super(pool);
+        }
+
+        protected void onTermination(final Throwable exception) {
+            try {
+                ByteBufferSlicePool.releaseThreadCaches();
+            } finally {
+                super.onTermination(exception);
+            }
+        }
+    }
+
+    static final class WorkerTaskThread extends Thread {
+
+        WorkerTaskThread(final ThreadGroup group, final Runnable target, final String name, final long stackSize) {
+            super(group, target, name, stackSize);
+        }
+
+        public void run() {
+            try {
+                super.run();
+            } finally {
+                ByteBufferSlicePool.releaseThreadCaches();
+            }
+        }
+    }
+
     class WorkerThreadFactory implements ThreadFactory {
 
         private final ThreadGroup threadGroup;
@@ -943,7 +1491,7 @@ public abstract class XnioWorker extends AbstractExecutorService implements Conf
         public Thread newThread(final Runnable r) {
             return doPrivileged(new PrivilegedAction<Thread>() {
                 public Thread run() {
-                    final Thread taskThread = new Thread(threadGroup, r, name + " task-" + getNextSeq(), optionMap.get(Options.STACK_SIZE, 0L));
+                    final Thread taskThread = new WorkerTaskThread(threadGroup, r, name + " task-" + getNextSeq(), optionMap.get(Options.STACK_SIZE, 0L));
                     // Mark the thread as daemon if the Options.THREAD_DAEMON has been set
                     if (markThreadAsDaemon) {
                         taskThread.setDaemon(true);
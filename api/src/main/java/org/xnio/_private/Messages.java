@@ -188,7 +188,8 @@ public interface Messages extends BasicLogger {
     @Message(id = 38, value = "Character decoding problem")
     CharConversionException characterDecodingProblem();
 
-    // id = 39 - Option value range
+    @Message(id = 39, value = "Value for option '%s' is out of range")
+    IllegalArgumentException optionOutOfRange(String name);
 
     // HTTP upgrade
 
@@ -329,6 +330,19 @@ public interface Messages extends BasicLogger {
     @LogMessage(level = ERROR)
     void executorSubmitFailed(RejectedExecutionException cause, Channel channel);
 
+    @Message(id = 1011, value = "Virtual threads are not available on this Java runtime")
+    IllegalArgumentException virtualThreadsUnavailable();
+
+    @Message(id = 1012, value = "Worker task queue is full")
+    RejectedExecutionException taskQueueFull();
+
+    @Message(id = 1013, value = "Buffer pool has reached its limit of %d pooled bytes")
+    IllegalStateException bufferPoolExhausted(long maxPooledBytes);
+
+    @Message(id = 1014, value = "A pooled buffer became unreachable without being freed; it was allocated at the following site")
+    @LogMessage(level = WARN)
+    void bufferLeaked(@Cause Throwable allocationSite);
+
     // Trace
 
     @Message(value = "Closing resource %s")
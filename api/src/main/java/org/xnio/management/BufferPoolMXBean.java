@@ -0,0 +1,140 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.management;
+
+import java.util.Map;
+
+/**
+ * The management interface of a buffer pool.
+ */
+public interface BufferPoolMXBean {
+    /**
+     * Get the name of the pool.
+     *
+     * @return the name of the pool
+     */
+    String getName();
+
+    /**
+     * Get the size of the buffers of the pool.
+     *
+     * @return the buffer size
+     */
+    int getBufferSize();
+
+    /**
+     * Get the number of regions backing the pool.
+     *
+     * @return the region count
+     */
+    int getRegionCount();
+
+    /**
+     * Get the number of regions allocated over the life of the pool, including those since trimmed.
+     *
+     * @return the number of regions allocated
+     */
+    long getRegionsAllocated();
+
+    /**
+     * Get the number of bytes in the regions backing the pool.
+     *
+     * @return the reserved bytes
+     */
+    long getReservedBytes();
+
+    /**
+     * Get an estimate of the number of buffers allocated and not yet freed or discarded.
+     *
+     * @return the outstanding buffer count
+     */
+    long getOutstandingCount();
+
+    /**
+     * Get the number of allocations served from the cache of the allocating thread.
+     *
+     * @return the local cache hit count
+     */
+    long getLocalCacheHitCount();
+
+    /**
+     * Get the number of allocations served from the free buffers shared by all threads.
+     *
+     * @return the shared stack hit count
+     */
+    long getSharedStackHitCount();
+
+    /**
+     * Get the number of allocations served by allocating a new region.
+     *
+     * @return the new region hit count
+     */
+    long getNewRegionHitCount();
+
+    /**
+     * Get the number of buffers freed back to the pool.
+     *
+     * @return the free count
+     */
+    long getFreeCount();
+
+    /**
+     * Get the number of buffers freed by a thread other than the one which allocated them.
+     *
+     * @return the foreign free count
+     */
+    long getForeignFreeCount();
+
+    /**
+     * Get the number of buffers discarded rather than freed.
+     *
+     * @return the discard count
+     */
+    long getDiscardCount();
+
+    /**
+     * Get the leak detection sampling interval.  One in this many allocations records its allocation site, so that
+     * the buffer can be reported if it becomes unreachable without being freed.
+     *
+     * @return the sampling interval, or 0 if leak detection is disabled
+     */
+    int getLeakSampleInterval();
+
+    /**
+     * Set the leak detection sampling interval.  A pool which does not detect leaks ignores this, and keeps reporting
+     * an interval of 0.
+     *
+     * @param interval the sampling interval, or 0 to disable leak detection
+     */
+    void setLeakSampleInterval(int interval);
+
+    /**
+     * Get the number of sampled buffers which became unreachable without being freed.
+     *
+     * @return the leak count
+     */
+    long getLeakCount();
+
+    /**
+     * Get the leak count of each allocation site which leaked a sampled buffer.
+     *
+     * @return the leak counts, keyed by the stack trace of the allocation
+     */
+    Map<String, Long> getLeakSites();
+}
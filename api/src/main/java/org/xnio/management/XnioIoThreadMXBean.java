@@ -0,0 +1,186 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.management;
+
+/**
+ * Management information for a single I/O thread of a worker.
+ */
+public interface XnioIoThreadMXBean {
+
+    /**
+     * Get the name of the provider.
+     *
+     * @return the name of the provider
+     */
+    String getProviderName();
+
+    /**
+     * Get the worker's name.
+     *
+     * @return the worker's name
+     */
+    String getWorkerName();
+
+    /**
+     * Get the I/O thread's name.
+     *
+     * @return the I/O thread's name
+     */
+    String getName();
+
+    /**
+     * Get the number of times another thread has woken this thread's selector.
+     *
+     * @return the number of wakeups issued
+     */
+    long getWakeupCount();
+
+    /**
+     * Get the number of wakeups which were skipped because the selector was not blocked, or had already been woken
+     * during the current select cycle.
+     *
+     * @return the number of wakeups suppressed
+     */
+    long getSuppressedWakeupCount();
+
+    /**
+     * Get the total time this thread has spent busy-polling its selector, in nanoseconds.  This is always zero unless
+     * busy polling is enabled for the worker.
+     *
+     * @return the busy-poll time
+     */
+    long getBusyPollTime();
+
+    /**
+     * Get the total time this thread has spent blocked in select, in nanoseconds.
+     *
+     * @return the blocked select time
+     */
+    long getBlockedSelectTime();
+
+    /**
+     * Get the total time this thread has spent running tasks and expired timers, in nanoseconds.
+     *
+     * @return the task time
+     */
+    long getTaskTime();
+
+    /**
+     * Get the total time this thread has spent running channel handlers for ready keys, in nanoseconds.
+     *
+     * @return the handler time
+     */
+    long getHandlerTime();
+
+    /**
+     * Get the number of select cycles this thread has completed.
+     *
+     * @return the select count
+     */
+    long getSelectCount();
+
+    /**
+     * Get the total number of ready keys this thread has processed.
+     *
+     * @return the processed key count
+     */
+    long getProcessedKeyCount();
+
+    /**
+     * Get the average number of ready keys processed per select cycle.
+     *
+     * @return the average number of keys per select
+     */
+    double getKeysPerSelect();
+
+    /**
+     * Get an estimate of the number of tasks waiting to be run by this thread.
+     *
+     * @return the task queue size
+     */
+    int getTaskQueueSize();
+
+    /**
+     * Get the number of delayed tasks scheduled on this thread.
+     *
+     * @return the delayed task count
+     */
+    int getDelayedTaskCount();
+
+    /**
+     * Get the number of channels registered with this thread's selector.
+     *
+     * @return the registered key count
+     */
+    int getRegisteredKeyCount();
+
+    /**
+     * Get the most recently measured event loop lag, in nanoseconds.  This is how late a periodic probe timer ran
+     * relative to its deadline, and includes the resolution of the timer.
+     *
+     * @return the last event loop lag
+     */
+    long getEventLoopLag();
+
+    /**
+     * Get the largest event loop lag measured so far, in nanoseconds.
+     *
+     * @return the maximum event loop lag
+     */
+    long getMaxEventLoopLag();
+
+    /**
+     * Get the number of times this thread stopped running queued tasks because its task budget was used up while
+     * more tasks were waiting.
+     *
+     * @return the number of times the task budget was exhausted
+     */
+    long getTaskBudgetExhaustedCount();
+
+    /**
+     * Get the number of times this thread deferred ready channels to the next pass because its key budget was used
+     * up.
+     *
+     * @return the number of times the key budget was exhausted
+     */
+    long getKeyBudgetExhaustedCount();
+
+    /**
+     * Get the total number of bytes read and written by this thread's channels.  Bytes are only counted while a thread
+     * selection or balancing strategy which uses them is in effect; otherwise this is zero.
+     *
+     * @return the bytes transferred
+     */
+    long getBytesTransferred();
+
+    /**
+     * Get a decaying average of the number of bytes this thread's channels transferred per sample interval (one second
+     * by default).  This is the load measure used by {@link org.xnio.IoThreadSelection#LEAST_BYTES}.
+     *
+     * @return the recent bytes transferred
+     */
+    long getRecentBytesTransferred();
+
+    /**
+     * Get the number of connections which have been moved from this thread to another.
+     *
+     * @return the number of connections moved away
+     */
+    long getMigratedConnectionCount();
+}
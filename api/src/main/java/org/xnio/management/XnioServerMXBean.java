@@ -65,4 +65,29 @@ public interface XnioServerMXBean {
      * @return the connection limit low-water mark
      */
     int getConnectionLimitLowWater();
+
+    /**
+     * Get a histogram of the number of connections accepted per accept readiness event.  Element 0 counts the events
+     * which accepted nothing, element {@code i} counts those which accepted from 2<sup>i-1</sup> up to
+     * 2<sup>i</sup>-1 connections, and the last element also counts every larger batch.
+     *
+     * @return the accepts per wakeup histogram
+     */
+    long[] getAcceptsPerWakeupHistogram();
+
+    /**
+     * Get the number of times an I/O thread stopped accepting connections for this server because its event loop lag
+     * or task queue passed the configured threshold.
+     *
+     * @return the accept throttle count
+     */
+    long getThrottleCount();
+
+    /**
+     * Get the number of connections closed on accept because their peer address already had the maximum number of
+     * open connections.
+     *
+     * @return the rejected connection count
+     */
+    long getRejectedConnectionCount();
 }
@@ -18,6 +18,8 @@
 
 package org.xnio.management;
 
+import java.util.Map;
+
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
@@ -71,4 +73,90 @@ public interface XnioWorkerMXBean {
      * @return the task count estimate
      */
     int getWorkerQueueSize();
+
+    /**
+     * Get the largest number of tasks which have been waiting in the worker queue at once.
+     *
+     * @return the queue high water mark
+     */
+    int getWorkerQueueHighWater();
+
+    /**
+     * Get the number of tasks which found the worker queue full.  This counts every such task, whether the
+     * {@link org.xnio.Options#WORKER_TASK_OVERFLOW_POLICY} rejected it, ran it in the caller, or suspended its channel.
+     *
+     * @return the rejected task count
+     */
+    long getRejectedTaskCount();
+
+    /**
+     * Get the number of tasks which have started to run in the task pool.
+     *
+     * @return the started task count
+     */
+    long getStartedTaskCount();
+
+    /**
+     * Get an estimate of the total time which the started tasks spent waiting in the worker queue, in nanoseconds,
+     * scaled up from a sample of timed tasks.  Divide by the {@linkplain #getStartedTaskCount() started task count}
+     * for the average.
+     *
+     * @return the total task wait time
+     */
+    long getTaskWaitTime();
+
+    /**
+     * Get the longest time which a single timed task spent waiting in the worker queue, in nanoseconds.
+     *
+     * @return the maximum task wait time
+     */
+    long getMaxTaskWaitTime();
+
+    /**
+     * Get a histogram of the time which started tasks spent waiting in the worker queue.  Element 0 counts waits
+     * under one microsecond, element {@code i} counts those from 2<sup>i-1</sup> up to 2<sup>i</sup> microseconds,
+     * and the last element also counts every longer wait.  The counts are scaled up from a sample of timed tasks.
+     *
+     * @return the task wait time histogram
+     */
+    long[] getTaskWaitTimeHistogram();
+
+    /**
+     * Get a histogram of the time which completed tasks spent running, with the same buckets as
+     * {@link #getTaskWaitTimeHistogram()}.
+     *
+     * @return the task run time histogram
+     */
+    long[] getTaskRunTimeHistogram();
+
+    /**
+     * Get an estimate of the number of task pool threads which are running a task.
+     *
+     * @return the active task count
+     */
+    int getActiveTaskCount();
+
+    /**
+     * Get the number of tasks which have finished running, normally or not.
+     *
+     * @return the completed task count
+     */
+    long getCompletedTaskCount();
+
+    /**
+     * Get the task classes which have spent the most time running, mapped to an estimate of that time in nanoseconds.
+     * Tasks which run a channel listener are attributed to the listener's class.  The estimate is drawn from a sample
+     * of the tasks.
+     *
+     * @return the top task classes by run time
+     */
+    Map<String, Long> getTopTaskClassRunTimes();
+
+    /**
+     * Get the number of times an I/O thread was found running a single channel handler or task for longer than the
+     * stall threshold.  This is always zero unless {@link org.xnio.Options#WORKER_IO_STALL_THRESHOLD} is set.
+     *
+     * @return the number of stalls detected
+     */
+    long getStallCount();
 }
@@ -22,7 +22,9 @@ package org.xnio;
 import static org.junit.Assert.assertArrayEquals;
 import static org.xnio.AssertReadWrite.assertReadMessage;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.nio.Buffer;
 import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
@@ -35,6 +37,11 @@ import java.nio.ShortBuffer;
 import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import junit.framework.TestCase;
 
@@ -3499,6 +3506,74 @@ public final class BuffersTestCase extends TestCase {
         assertEquals('8', slice2.get(1));
     }
 
+    public void testAllocatedBufferPoolStatistics() throws Exception {
+        final Pool<ByteBuffer> pool = Buffers.allocatedBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 16);
+        final Closeable registration = Buffers.registerMXBean(pool, "allocated-test");
+        try {
+            final Pooled<ByteBuffer> freed = pool.allocate();
+            final Pooled<ByteBuffer> discarded = pool.allocate();
+            pool.allocate();
+            freed.free();
+            freed.free();
+            discarded.discard();
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName("org.xnio:type=BufferPool,name=" + ObjectName.quote("allocated-test"));
+            assertEquals(Long.valueOf(3L), server.getAttribute(objectName, "RegionsAllocated"));
+            assertEquals(Long.valueOf(1L), server.getAttribute(objectName, "FreeCount"));
+            assertEquals(Long.valueOf(1L), server.getAttribute(objectName, "DiscardCount"));
+            assertEquals(Long.valueOf(1L), server.getAttribute(objectName, "OutstandingCount"));
+            assertEquals(Long.valueOf(0L), server.getAttribute(objectName, "ReservedBytes"));
+            // the pool does not detect leaks, so the interval cannot be changed
+            server.setAttribute(objectName, new Attribute("LeakSampleInterval", Integer.valueOf(5)));
+            assertEquals(Integer.valueOf(0), server.getAttribute(objectName, "LeakSampleInterval"));
+        } finally {
+            registration.close();
+        }
+    }
+
+    public void testAllocatedBufferReleasedOnce() throws Exception {
+        final Pool<ByteBuffer> pool = Buffers.allocatedBufferPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 16);
+        final Closeable registration = Buffers.registerMXBean(pool, "allocated-once-test");
+        try {
+            final int threadCount = 8;
+            for (int i = 0; i < 100; i ++) {
+                final Pooled<ByteBuffer> pooled = pool.allocate();
+                final CountDownLatch start = new CountDownLatch(1);
+                final Thread[] threads = new Thread[threadCount];
+                for (int t = 0; t < threadCount; t ++) {
+                    final boolean discard = (t & 1) == 0;
+                    threads[t] = new Thread(new Runnable() {
+                        public void run() {
+                            try {
+                                start.await();
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                            if (discard) {
+                                pooled.discard();
+                            } else {
+                                pooled.free();
+                            }
+                        }
+                    });
+                    threads[t].start();
+                }
+                start.countDown();
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+            }
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName("org.xnio:type=BufferPool,name=" + ObjectName.quote("allocated-once-test"));
+            final long freed = ((Long) server.getAttribute(objectName, "FreeCount")).longValue();
+            final long discarded = ((Long) server.getAttribute(objectName, "DiscardCount")).longValue();
+            assertEquals(100L, freed + discarded);
+            assertEquals(Long.valueOf(0L), server.getAttribute(objectName, "OutstandingCount"));
+        } finally {
+            registration.close();
+        }
+    }
+
     public void testSecureBufferPool() {
         final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 17000, 17000 * 16);
         final Pool<ByteBuffer> securePool = Buffers.secureBufferPool(pool);
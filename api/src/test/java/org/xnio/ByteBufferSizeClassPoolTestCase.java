@@ -0,0 +1,105 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ByteBufferSizeClassPool}.
+ */
+public final class ByteBufferSizeClassPoolTestCase {
+
+    private static ByteBufferSizeClassPool createPool() {
+        return new ByteBufferSizeClassPool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, new int[] { 1024, 16384, 65536 }, 65536);
+    }
+
+    @Test
+    public void testSmallestFittingClass() {
+        final ByteBufferSizeClassPool pool = createPool();
+        final Pooled<ByteBuffer> small = pool.allocate(100);
+        final Pooled<ByteBuffer> exact = pool.allocate(1024);
+        final Pooled<ByteBuffer> medium = pool.allocate(1025);
+        final Pooled<ByteBuffer> large = pool.allocate(65536);
+        final Pooled<ByteBuffer> standard = pool.allocate();
+        try {
+            assertEquals(1024, small.getResource().capacity());
+            assertEquals(1024, exact.getResource().capacity());
+            assertEquals(16384, medium.getResource().capacity());
+            assertEquals(65536, large.getResource().capacity());
+            assertEquals(65536, standard.getResource().capacity());
+        } finally {
+            small.free();
+            exact.free();
+            medium.free();
+            large.free();
+            standard.free();
+        }
+        assertSame(pool.getSizeClasses()[0], pool.getSizeClass(1));
+        try {
+            pool.allocate(65537);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void testStatistics() {
+        final ByteBufferSizeClassPool pool = createPool();
+        final ByteBufferSizeClassPool.SizeClass[] sizeClasses = pool.getSizeClasses();
+        assertEquals(3, sizeClasses.length);
+        for (int i = 0; i < 3; i ++) {
+            pool.allocate(i + 1).free();
+        }
+        pool.allocate(2000).free();
+        assertEquals(3L, sizeClasses[0].getAllocationCount());
+        assertEquals(6L, sizeClasses[0].getRequestedBytes());
+        assertEquals(1, sizeClasses[0].getRegionCount());
+        // a region holds 64 of the smallest buffers, which were carved from it rather than from a large slice
+        assertEquals(65536L, sizeClasses[0].getRegionBytes());
+        assertEquals(1L, sizeClasses[1].getAllocationCount());
+        assertEquals(1, sizeClasses[1].getRegionCount());
+        assertEquals(0L, sizeClasses[2].getAllocationCount());
+        assertEquals(0, sizeClasses[2].getRegionCount());
+    }
+
+    @Test
+    public void testInvalidSizes() {
+        try {
+            new ByteBufferSizeClassPool(new int[] { 1024, 1024 }, 65536);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new ByteBufferSizeClassPool(new int[0], 65536);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new ByteBufferSizeClassPool(new int[] { 1024, 131072 }, 65536);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
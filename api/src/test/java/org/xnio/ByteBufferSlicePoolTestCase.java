@@ -0,0 +1,251 @@
+/*
+ * JBoss, Home of Professional Open Source
+ *
+ * Copyright 2014 Red Hat, Inc. and/or its affiliates.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.Closeable;
+import java.lang.ref.WeakReference;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ByteBufferSlicePool}.
+ */
+public final class ByteBufferSlicePoolTestCase {
+
+    @Test
+    public void testRegionCarving() {
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 64, 64 * 4);
+        final Pooled<?>[] pooled = new Pooled<?>[5];
+        for (int i = 0; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+            assertEquals(64, ((ByteBuffer) pooled[i].getResource()).capacity());
+        }
+        assertEquals(2, pool.getRegionCount());
+        for (Pooled<?> p : pooled) {
+            p.free();
+        }
+        for (int i = 0; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+        }
+        // every buffer came back to the pool
+        assertEquals(2, pool.getRegionCount());
+    }
+
+    @Test
+    public void testThreadCacheDoesNotKeepPoolAlive() throws Exception {
+        ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 64, 64 * 4);
+        // cache a buffer on this thread, which outlives the pool
+        pool.allocate().free();
+        final WeakReference<ByteBufferSlicePool> ref = new WeakReference<ByteBufferSlicePool>(pool);
+        pool = null;
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (ref.get() != null) {
+            if (System.nanoTime() - deadline > 0L) {
+                fail("Pool was kept alive by a thread cache");
+            }
+            System.gc();
+            Thread.sleep(10L);
+        }
+    }
+
+    @Test
+    public void testConcurrentAllocateFree() throws Exception {
+        // tiny regions and batches beyond the thread-local cache keep the shared stacks busy
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 16, 16 * 4);
+        final int threads = 16;
+        final CountDownLatch done = new CountDownLatch(threads);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        for (int t = 0; t < threads; t ++) {
+            final long id = t;
+            new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        @SuppressWarnings("unchecked")
+                        final Pooled<ByteBuffer>[] batch = new Pooled[32];
+                        for (int iteration = 0; iteration < 2000 && failure.get() == null; iteration ++) {
+                            final long marker = id << 32 | iteration;
+                            for (int i = 0; i < batch.length; i ++) {
+                                batch[i] = pool.allocate();
+                                batch[i].getResource().putLong(0, marker).putLong(8, i);
+                            }
+                            Thread.yield();
+                            for (int i = 0; i < batch.length; i ++) {
+                                final ByteBuffer buffer = batch[i].getResource();
+                                if (buffer.getLong(0) != marker || buffer.getLong(8) != i) {
+                                    // another thread was handed the same slice
+                                    failure.compareAndSet(null, "Slice shared between allocations");
+                                }
+                                batch[i].free();
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e.toString());
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        assertTrue(done.await(60L, TimeUnit.SECONDS));
+        assertNull(failure.get());
+    }
+
+    @Test
+    public void testIdleRegionsAreTrimmed() throws Exception {
+        final AtomicInteger allocations = new AtomicInteger();
+        final BufferAllocator<ByteBuffer> allocator = new BufferAllocator<ByteBuffer>() {
+            public ByteBuffer allocate(final int size) {
+                allocations.incrementAndGet();
+                return ByteBuffer.allocate(size);
+            }
+        };
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(allocator, 64, 64 * 4, 4, false, 50L, 0L);
+        final Pooled<?>[] pooled = new Pooled<?>[12];
+        for (int i = 0; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+        }
+        assertEquals(3, pool.getRegionCount());
+        // keep one buffer of the first region
+        for (int i = 1; i < pooled.length; i ++) {
+            pooled[i].free();
+        }
+        assertEquals(0, pool.trim());
+        Thread.sleep(200L);
+        assertEquals(2, pool.trim());
+        assertEquals(1, pool.getRegionCount());
+        // the free slices of the first region are still pooled, and the rest are carved anew
+        for (int i = 1; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+        }
+        assertEquals(3, pool.getRegionCount());
+        assertEquals(5, allocations.get());
+        for (Pooled<?> p : pooled) {
+            p.free();
+        }
+    }
+
+    @Test
+    public void testPooledBytesLimit() {
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 64, 64 * 4, 4, false, 0L, 64 * 8);
+        final Pooled<?>[] pooled = new Pooled<?>[8];
+        for (int i = 0; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+        }
+        try {
+            pool.allocate();
+            fail("Expected IllegalStateException");
+        } catch (IllegalStateException expected) {
+        }
+        assertEquals(2, pool.getRegionCount());
+        // a freed buffer can be allocated again
+        pooled[0].free();
+        pooled[0] = pool.allocate();
+        for (Pooled<?> p : pooled) {
+            p.free();
+        }
+    }
+
+    private static void leakBuffer(final ByteBufferSlicePool pool) {
+        pool.allocate().getResource().put(0, (byte) 1);
+    }
+
+    @Test
+    public void testLeakDetection() throws Exception {
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 64, 64 * 4);
+        assertEquals(0, pool.getLeakSampleInterval());
+        pool.setLeakSampleInterval(1);
+        final Closeable registration = pool.registerMXBean("leak-test");
+        try {
+            for (int i = 0; i < 8; i ++) {
+                pool.allocate().free();
+            }
+            leakBuffer(pool);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+            while (pool.getLeakCount() == 0L && System.nanoTime() - deadline < 0L) {
+                System.gc();
+                Thread.sleep(10L);
+            }
+            // freed buffers are never reported
+            assertEquals(1L, pool.getLeakCount());
+            final ObjectName objectName = new ObjectName("org.xnio:type=BufferPool,name=" + ObjectName.quote("leak-test"));
+            assertEquals(Long.valueOf(1L), ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "LeakCount"));
+            final TabularData sites = (TabularData) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "LeakSites");
+            assertEquals(1, sites.size());
+            final CompositeData site = (CompositeData) sites.values().iterator().next();
+            assertTrue(((String) site.get("key")).startsWith(ByteBufferSlicePoolTestCase.class.getName() + ".leakBuffer"));
+            assertEquals(Long.valueOf(1L), site.get("value"));
+        } finally {
+            registration.close();
+        }
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 64, 64 * 4);
+        final Closeable registration = pool.registerMXBean("statistics-test");
+        try {
+            final Pooled<?>[] pooled = new Pooled<?>[5];
+            for (int i = 0; i < pooled.length; i ++) {
+                pooled[i] = pool.allocate();
+            }
+            for (Pooled<?> p : pooled) {
+                p.free();
+            }
+            // the buffers freed above are cached by this thread
+            final Pooled<?> foreign = pool.allocate();
+            final Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    foreign.free();
+                }
+            });
+            thread.start();
+            thread.join();
+            pool.allocate().discard();
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName objectName = new ObjectName("org.xnio:type=BufferPool,name=" + ObjectName.quote("statistics-test"));
+            assertEquals(Long.valueOf(2L), server.getAttribute(objectName, "RegionsAllocated"));
+            assertEquals(Long.valueOf(2L * 64 * 4), server.getAttribute(objectName, "ReservedBytes"));
+            assertEquals(Long.valueOf(2L), server.getAttribute(objectName, "NewRegionHitCount"));
+            assertEquals(Long.valueOf(3L), server.getAttribute(objectName, "SharedStackHitCount"));
+            assertEquals(Long.valueOf(2L), server.getAttribute(objectName, "LocalCacheHitCount"));
+            assertEquals(Long.valueOf(6L), server.getAttribute(objectName, "FreeCount"));
+            assertEquals(Long.valueOf(1L), server.getAttribute(objectName, "ForeignFreeCount"));
+            assertEquals(Long.valueOf(1L), server.getAttribute(objectName, "DiscardCount"));
+            assertEquals(Long.valueOf(0L), server.getAttribute(objectName, "OutstandingCount"));
+        } finally {
+            registration.close();
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.xnio.nio.Log.log;
+
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.security.AccessController;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.LockSupport;
+
+import org.xnio.ReadPropertyAction;
+
+/**
+ * A thread which periodically compares the recent traffic of the I/O threads of a worker, and when the busiest thread
+ * moves more than twice as many bytes as the least busy one, moves one of its socket connections over.  The
+ * connection chosen is the busiest one which carries no more than half of the difference, so that a single dominant
+ * connection is left in place rather than moving the hot spot to another thread.
+ * <p>
+ * The traffic of a thread is only sampled once per load sample interval, so the rebalancer never runs more often than
+ * that.  Threads whose traffic differs by less than the {@code xnio.nio.rebalance-min-imbalance} property (64 KiB per
+ * sample interval by default) are left alone, and a connection which has been moved stays where it is for
+ * {@link #COOLDOWN_INTERVALS} passes, so that it does not bounce between threads while their averages catch up.
+ */
+final class ConnectionRebalancer extends Thread {
+
+    /**
+     * The number of passes for which a moved connection is not moved again.
+     */
+    static final int COOLDOWN_INTERVALS = 4;
+    private static final long MIN_IMBALANCE;
+
+    static {
+        MIN_IMBALANCE = Math.max(0L, Long.parseLong(AccessController.doPrivileged(new ReadPropertyAction("xnio.nio.rebalance-min-imbalance", "65536"))));
+    }
+
+    private final NioXnioWorker worker;
+    private final long intervalNanos;
+
+    ConnectionRebalancer(final NioXnioWorker worker, final ThreadGroup group, final String name, final long intervalNanos) {
+        super(group, name);
+        this.worker = worker;
+        // a shorter interval would compare the same samples again
+        this.intervalNanos = Math.max(intervalNanos, WorkerThread.getLoadSampleInterval());
+        setDaemon(true);
+    }
+
+    public void run() {
+        while (! worker.isTerminated()) {
+            LockSupport.parkNanos(this, intervalNanos);
+            if (! worker.isShutdown()) {
+                check();
+            }
+        }
+    }
+
+    void check() {
+        final WorkerThread[] threads = worker.getAll();
+        if (threads.length < 2) {
+            return;
+        }
+        WorkerThread hot = threads[0];
+        WorkerThread cold = threads[0];
+        long hotBytes = hot.getRecentBytesTransferred();
+        long coldBytes = hotBytes;
+        for (int i = 1; i < threads.length; i++) {
+            final WorkerThread thread = threads[i];
+            final long bytes = thread.getRecentBytesTransferred();
+            if (bytes > hotBytes) {
+                hot = thread;
+                hotBytes = bytes;
+            } else if (bytes < coldBytes) {
+                cold = thread;
+                coldBytes = bytes;
+            }
+        }
+        if (hotBytes <= coldBytes * 2L || hotBytes - coldBytes < MIN_IMBALANCE) {
+            return;
+        }
+        // the share of the hot thread's traffic which should move
+        final double share = (double) (hotBytes - coldBytes) / (2.0 * (double) hotBytes);
+        final WorkerThread source = hot;
+        final WorkerThread target = cold;
+        final long cooldownNanos = intervalNanos * COOLDOWN_INTERVALS;
+        try {
+            source.execute(new Runnable() {
+                public void run() {
+                    rebalance(source, target, share, cooldownNanos);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // the thread is exiting
+        }
+    }
+
+    /**
+     * Choose a connection of the source thread and move it to the target thread.  Must be run on the source thread.
+     *
+     * @param cooldownNanos how long the moved connection is then left where it is
+     */
+    static void rebalance(final WorkerThread source, final WorkerThread target, final double share, final long cooldownNanos) {
+        final SelectionKey[] keys = source.getRegisteredKeys();
+        final long[] samples = new long[keys.length];
+        long total = 0L;
+        for (int i = 0; i < keys.length; i++) {
+            final Object attachment = keys[i].attachment();
+            if (attachment instanceof NioSocketConduit) {
+                total += samples[i] = ((NioSocketConduit) attachment).sampleBytesTransferred();
+            }
+        }
+        final long limit = (long) (total * share);
+        final long now = System.nanoTime();
+        NioSocketConduit best = null;
+        long bestBytes = 0L;
+        for (int i = 0; i < keys.length; i++) {
+            if (samples[i] > bestBytes && samples[i] <= limit) {
+                final NioSocketConduit conduit = (NioSocketConduit) keys[i].attachment();
+                if (conduit.getWorkerThread() == source && ! conduit.isRebalanceHeld(now)) {
+                    best = conduit;
+                    bestBytes = samples[i];
+                }
+            }
+        }
+        if (best != null) try {
+            log.tracef("Moving %s (%d bytes) from %s to %s", best, Long.valueOf(bestBytes), source, target);
+            best.holdRebalance(now + cooldownNanos);
+            best.migrate(target);
+        } catch (ClosedChannelException ignored) {
+        }
+    }
+}
@@ -119,12 +119,25 @@ interface Log extends BasicLogger {
     @Message(id = 7007, value = "Thread is terminating")
     RejectedExecutionException threadExiting();
 
+    @Message(id = 7008, value = "Only socket connections can be moved, and only between I/O threads of their own worker")
+    IllegalArgumentException cannotMigrate();
+
+    @Message(id = 7009, value = "Balancing tokens cannot be used with accept sharding")
+    IllegalArgumentException balancingTokensWithSharding();
+
+    @Message(id = 7010, value = "Accept throttling needs the event loop lag probe, which is disabled by the xnio.nio.lag-probe-interval property")
+    IllegalArgumentException acceptThrottleWithoutLagProbe();
+
     // I/O messages
 
     @LogMessage(level = WARN)
     @Message(id = 8000, value = "Received an I/O error on selection: %s")
     void selectionError(IOException e);
 
+    @LogMessage(level = WARN)
+    @Message(id = 8001, value = "I/O thread %s has been running %s for %d ms; all other channels of the thread are stalled")
+    void ioThreadStalled(String threadName, String listenerClass, long millis, @Cause Throwable stackSample);
+
     // Trace
 
     @LogMessage(level = TRACE)
@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded, lock-free, multiple-producer/single-consumer FIFO queue.  Any thread may call {@link #offer(Object)},
+ * which never blocks; only the owning (consumer) thread may call {@link #poll()}.  Elements offered by a single
+ * producer are always consumed in the order they were offered.
+ *
+ * @param <E> the element type
+ */
+final class MpscQueue<E> {
+
+    // consumer side; written only by the consumer thread
+    @SuppressWarnings("unused")
+    private volatile Node<E> head;
+
+    // producer side
+    @SuppressWarnings("unused")
+    private volatile Node<E> tail;
+
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Node> headUpdater = AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Node.class, "head");
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<MpscQueue, Node> tailUpdater = AtomicReferenceFieldUpdater.newUpdater(MpscQueue.class, Node.class, "tail");
+
+    MpscQueue() {
+        final Node<E> stub = new Node<E>(null);
+        headUpdater.lazySet(this, stub);
+        tailUpdater.set(this, stub);
+    }
+
+    /**
+     * Add an element to the tail of this queue.  May be called from any thread.
+     *
+     * @param value the element to add (must not be {@code null})
+     */
+    @SuppressWarnings("unchecked")
+    void offer(final E value) {
+        assert value != null;
+        final Node<E> node = new Node<E>(value);
+        final Node<E> prev = tailUpdater.getAndSet(this, node);
+        prev.lazySetNext(node);
+    }
+
+    /**
+     * Remove and return the element at the head of this queue.  Must only be called from the consumer thread.
+     *
+     * @return the element, or {@code null} if the queue is empty
+     */
+    E poll() {
+        final Node<E> head = this.head;
+        Node<E> next = head.next;
+        if (next == null) {
+            if (head == tail) {
+                return null;
+            }
+            // a producer has swapped the tail but not yet linked it in; it will do so momentarily
+            do {
+                next = head.next;
+            } while (next == null);
+        }
+        final E value = next.value;
+        next.value = null;
+        headUpdater.lazySet(this, next);
+        return value;
+    }
+
+    /**
+     * Determine whether this queue is empty.  An element whose {@link #offer(Object)} is still in progress
+     * counts as present.
+     *
+     * @return {@code true} if the queue is empty
+     */
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    /**
+     * Get an estimate of the number of elements in this queue.  May be called from any thread; the queue is walked,
+     * so the cost is proportional to its length.
+     *
+     * @return the estimated number of elements
+     */
+    int size() {
+        Node<E> node = head;
+        Node<E> next;
+        int count = 0;
+        while ((next = node.next) != null && count < Integer.MAX_VALUE) {
+            count ++;
+            node = next;
+        }
+        return count;
+    }
+
+    static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node, Node> nextUpdater = AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        Node(final E value) {
+            this.value = value;
+        }
+
+        void lazySetNext(final Node<E> next) {
+            nextUpdater.lazySet(this, next);
+        }
+    }
+}
@@ -19,24 +19,59 @@
 package org.xnio.nio;
 
 import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SelectionKey;
+import java.nio.channels.spi.AbstractSelectableChannel;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import static org.xnio.Bits.allAreClear;
 import static org.xnio.Bits.allAreSet;
+import static java.lang.Thread.currentThread;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
  */
 abstract class NioHandle {
-    private final WorkerThread workerThread;
-    private final SelectionKey selectionKey;
+    private static final AtomicIntegerFieldUpdater<NioHandle> interestUpdater = AtomicIntegerFieldUpdater.newUpdater(NioHandle.class, "interest");
+
+    // both change only when the handle is moved to another thread; the key is written first, so a reader which
+    // reads the thread first sees a key which is at least as new
+    private volatile WorkerThread workerThread;
+    private volatile SelectionKey selectionKey;
+    /**
+     * The resumed operations.  Each change is made here before it is applied to the key, so that a move to another
+     * thread can give the new key every change, including those applied to the old key after it was replaced.
+     */
+    volatile int interest;
+    /**
+     * {@code true} while a move to another thread is in progress; only read and written by the current thread.
+     */
+    private boolean migrating;
 
     protected NioHandle(final WorkerThread workerThread, final SelectionKey selectionKey) {
         this.workerThread = workerThread;
         this.selectionKey = selectionKey;
     }
 
+    private void addInterest(final int ops) {
+        int old;
+        do {
+            old = interest;
+        } while (! allAreSet(old, ops) && ! interestUpdater.compareAndSet(this, old, old | ops));
+    }
+
+    private void removeInterest(final int ops) {
+        int old;
+        do {
+            old = interest;
+        } while (! allAreClear(old, ops) && ! interestUpdater.compareAndSet(this, old, old & ~ops));
+    }
+
     void resume(final int ops) {
+        addInterest(ops);
+        final WorkerThread workerThread = this.workerThread;
+        final SelectionKey selectionKey = this.selectionKey;
         try {
             if (! allAreSet(selectionKey.interestOps(), ops)) {
                 workerThread.setOps(selectionKey, ops);
@@ -45,9 +80,18 @@ abstract class NioHandle {
     }
 
     void wakeup(final int ops) {
+        addInterest(ops);
+        final WorkerThread workerThread = this.workerThread;
+        final SelectionKey selectionKey = this.selectionKey;
         workerThread.queueTask(new Runnable() {
             public void run() {
-                handleReady(ops);
+                final WorkerThread current = getWorkerThread();
+                if (current != currentThread()) {
+                    // the handle was moved after this task was queued
+                    current.execute(this);
+                } else {
+                    handleReady(ops);
+                }
             }
         });
         try {
@@ -58,6 +102,9 @@ abstract class NioHandle {
     }
 
     void suspend(final int ops) {
+        removeInterest(ops);
+        final WorkerThread workerThread = this.workerThread;
+        final SelectionKey selectionKey = this.selectionKey;
         try {
             if (! allAreClear(selectionKey.interestOps(), ops)) {
                 workerThread.clearOps(selectionKey, ops);
@@ -66,10 +113,116 @@ abstract class NioHandle {
     }
 
     boolean isResumed(final int ops) {
+        // the new key of a moved handle may not have its interest set yet
+        return selectionKey.isValid() && allAreSet(interest, ops);
+    }
+
+    /**
+     * Move this handle and its channel to another I/O thread of the same worker.  The new thread registers the
+     * channel, then this thread replaces its key with the new one and cancels the old key, and finally the new
+     * thread gives the new key the current interest set, so readiness and every resume or suspend carry over.
+     * Neither thread waits for the other, and the move always completes asynchronously.  A call from any other
+     * thread than the current I/O thread of the handle is forwarded to it, and a call made while a move is in
+     * progress is ignored.
+     *
+     * @param newThread the thread to move to
+     * @throws ClosedChannelException if the channel was closed
+     */
+    void migrate(final WorkerThread newThread) throws ClosedChannelException {
+        final WorkerThread oldThread = workerThread;
+        if (oldThread != currentThread()) {
+            oldThread.execute(new Runnable() {
+                public void run() {
+                    try {
+                        migrate(newThread);
+                    } catch (ClosedChannelException ignored) {}
+                }
+            });
+            return;
+        }
+        if (newThread == oldThread || migrating) {
+            return;
+        }
+        final SelectionKey oldKey = selectionKey;
+        if (! oldKey.isValid()) {
+            throw new ClosedChannelException();
+        }
+        migrating = true;
+        try {
+            newThread.execute(new Runnable() {
+                public void run() {
+                    register(oldThread, oldKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the new thread is exiting
+            migrating = false;
+        }
+    }
+
+    /**
+     * Register the channel with the current thread, which is the destination of a move, and hand the new key back to
+     * the old thread.
+     */
+    private void register(final WorkerThread oldThread, final SelectionKey oldKey) {
+        final WorkerThread newThread = (WorkerThread) currentThread();
+        final SelectionKey newKey;
+        try {
+            newKey = newThread.registerChannel((AbstractSelectableChannel) oldKey.channel());
+        } catch (ClosedChannelException e) {
+            handBack(oldThread, newThread, null);
+            return;
+        }
+        newKey.attach(this);
+        handBack(oldThread, newThread, newKey);
+    }
+
+    private void handBack(final WorkerThread oldThread, final WorkerThread newThread, final SelectionKey newKey) {
+        try {
+            oldThread.execute(new Runnable() {
+                public void run() {
+                    if (newKey == null) {
+                        migrating = false;
+                    } else {
+                        complete(newThread, newKey);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the old thread is exiting, and will close the channel
+            if (newKey != null) {
+                newKey.cancel();
+            }
+        }
+    }
+
+    /**
+     * Replace the old key with the new one.  Runs on the old thread, which owns the handle until then.
+     */
+    private void complete(final WorkerThread newThread, final SelectionKey newKey) {
+        final WorkerThread oldThread = workerThread;
+        final SelectionKey oldKey = selectionKey;
+        migrating = false;
+        if (! oldKey.isValid()) {
+            // closed in the meantime
+            newKey.cancel();
+            return;
+        }
+        oldThread.connectionMigrated();
+        selectionKey = newKey;
+        workerThread = newThread;
+        oldThread.cancelKey(oldKey);
         try {
-            return allAreSet(selectionKey.interestOps(), ops);
-        } catch (CancelledKeyException ignored) {
-            return false;
+            newThread.execute(new Runnable() {
+                public void run() {
+                    // a change made after the swap was applied to the new key already, and is part of this value too
+                    try {
+                        newKey.interestOps(interest);
+                    } catch (CancelledKeyException ignored) {}
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // the new thread is exiting, and will close the channel
         }
     }
 
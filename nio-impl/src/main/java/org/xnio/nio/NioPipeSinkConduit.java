@@ -105,6 +105,7 @@ final class NioPipeSinkConduit extends NioHandle implements StreamSinkConduit {
 
     public final long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
         long res = src.transferTo(position, count, sinkChannel);
+        if (res > 0L) getWorkerThread().addBytesTransferred(res);
         checkWriteTimeout(res > 0L);
         return res;
     }
@@ -115,6 +116,7 @@ final class NioPipeSinkConduit extends NioHandle implements StreamSinkConduit {
 
     public int write(final ByteBuffer src) throws IOException {
         int res = sinkChannel.write(src);
+        if (res > 0) getWorkerThread().addBytesTransferred(res);
         checkWriteTimeout(res > 0);
         return res;
     }
@@ -124,6 +126,7 @@ final class NioPipeSinkConduit extends NioHandle implements StreamSinkConduit {
             return write(srcs[offset]);
         }
         long res = sinkChannel.write(srcs, offset, length);
+        if (res > 0L) getWorkerThread().addBytesTransferred(res);
         checkWriteTimeout(res > 0L);
         return res;
     }
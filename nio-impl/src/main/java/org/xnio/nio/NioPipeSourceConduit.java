@@ -106,6 +106,7 @@ final class NioPipeSourceConduit extends NioHandle implements StreamSourceCondui
 
     public long transferTo(final long position, final long count, final FileChannel target) throws IOException {
         long res = target.transferFrom(sourceChannel, position, count);
+        if (res > 0L) getWorkerThread().addBytesTransferred(res);
         checkReadTimeout(res > 0L);
         return res;
     }
@@ -121,6 +122,7 @@ final class NioPipeSourceConduit extends NioHandle implements StreamSourceCondui
         } catch (ClosedChannelException e) {
             return -1;
         }
+        if (res > 0) getWorkerThread().addBytesTransferred(res);
         if (res != -1) checkReadTimeout(res > 0);
         return res;
     }
@@ -135,6 +137,7 @@ final class NioPipeSourceConduit extends NioHandle implements StreamSourceCondui
         } catch (ClosedChannelException e) {
             return -1L;
         }
+        if (res > 0L) getWorkerThread().addBytesTransferred(res);
         if (res != -1L) checkReadTimeout(res > 0L);
         return res;
     }
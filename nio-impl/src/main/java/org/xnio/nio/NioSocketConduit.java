@@ -63,6 +63,13 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
     @SuppressWarnings("rawtypes")
     private static final AtomicIntegerFieldUpdater<NioSocketConduit> writeTimeoutUpdater = AtomicIntegerFieldUpdater.newUpdater(NioSocketConduit.class, "writeTimeout");
 
+    // bytes moved by this connection, and their total when the rebalancer last sampled it; an estimate only
+    private long bytesTransferred;
+    private long sampledBytesTransferred;
+    // whether the rebalancer has moved this connection, and until when it is then left alone
+    private boolean rebalanceHeld;
+    private long rebalanceHeldUntil;
+
     NioSocketConduit(final WorkerThread workerThread, final SelectionKey selectionKey, final NioSocketStreamConnection connection) {
         super(workerThread, selectionKey);
         this.connection = connection;
@@ -114,6 +121,37 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
         if (write != null) write.terminated();
     }
 
+    private void bytesTransferred(final long bytes) {
+        bytesTransferred += bytes;
+        getWorkerThread().addBytesTransferred(bytes);
+    }
+
+    /**
+     * Get the number of bytes this connection has transferred since this method was last called.
+     *
+     * @return the bytes transferred
+     */
+    long sampleBytesTransferred() {
+        final long total = bytesTransferred;
+        final long sample = total - sampledBytesTransferred;
+        sampledBytesTransferred = total;
+        return sample;
+    }
+
+    /**
+     * Keep the rebalancer from moving this connection again until the given time.
+     *
+     * @param until the {@link System#nanoTime()} at which the connection may be moved again
+     */
+    void holdRebalance(final long until) {
+        rebalanceHeld = true;
+        rebalanceHeldUntil = until;
+    }
+
+    boolean isRebalanceHeld(final long now) {
+        return rebalanceHeld && now - rebalanceHeldUntil < 0L;
+    }
+
     // Write methods
 
     int getAndSetWriteTimeout(int newVal) {
@@ -140,6 +178,7 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
 
     public final long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
         long res = src.transferTo(position, count, socketChannel);
+        if (res > 0L) bytesTransferred(res);
         checkWriteTimeout(res > 0L);
         return res;
     }
@@ -150,6 +189,7 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
 
     public int write(final ByteBuffer src) throws IOException {
         int res = socketChannel.write(src);
+        if (res > 0) bytesTransferred(res);
         checkWriteTimeout(res > 0);
         return res;
     }
@@ -159,6 +199,7 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
             return write(srcs[offset]);
         }
         long res = socketChannel.write(srcs, offset, length);
+        if (res > 0L) bytesTransferred(res);
         checkWriteTimeout(res > 0L);
         return res;
     }
@@ -268,6 +309,7 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
 
     public long transferTo(final long position, final long count, final FileChannel target) throws IOException {
         long res = target.transferFrom(socketChannel, position, count);
+        if (res > 0L) bytesTransferred(res);
         checkReadTimeout(res > 0L);
         return res;
     }
@@ -283,6 +325,7 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
         } catch (ClosedChannelException e) {
             return -1;
         }
+        if (res > 0) bytesTransferred(res);
         if (res != -1) checkReadTimeout(res > 0);
         else terminateReads();
         return res;
@@ -298,6 +341,7 @@ final class NioSocketConduit extends NioHandle implements StreamSourceConduit, S
         } catch (ClosedChannelException e) {
             return -1L;
         }
+        if (res > 0L) bytesTransferred(res);
         if (res != -1L) checkReadTimeout(res > 0L);
         else terminateReads();
         return res;
@@ -28,6 +28,7 @@ import java.nio.channels.SocketChannel;
 import java.util.Set;
 import org.xnio.Option;
 import org.xnio.Options;
+import org.xnio.XnioIoThread;
 
 /**
  * @author <a href="mailto:david.lloyd@redhat.com">David M. Lloyd</a>
@@ -35,17 +36,28 @@ import org.xnio.Options;
 final class NioSocketStreamConnection extends AbstractNioStreamConnection {
 
     private final NioTcpServerHandle serverConduit;
+    private final NioTcpServer.AddressCount addressCount;
     private final NioSocketConduit conduit;
 
     NioSocketStreamConnection(final WorkerThread workerThread, final SelectionKey key, final NioTcpServerHandle serverConduit) {
+        this(workerThread, key, serverConduit, null);
+    }
+
+    NioSocketStreamConnection(final WorkerThread workerThread, final SelectionKey key, final NioTcpServerHandle serverConduit, final NioTcpServer.AddressCount addressCount) {
         super(workerThread);
         conduit = new NioSocketConduit(workerThread, key, this);
         key.attach(conduit);
         this.serverConduit = serverConduit;
+        this.addressCount = addressCount;
         setSinkConduit(conduit);
         setSourceConduit(conduit);
     }
 
+    public XnioIoThread getIoThread() {
+        // the connection may have been moved to another thread since it was constructed
+        return conduit.getWorkerThread();
+    }
+
     public SocketAddress getPeerAddress() {
         final Socket socket = conduit.getSocketChannel().socket();
         return new InetSocketAddress(socket.getInetAddress(), socket.getPort());
@@ -135,6 +147,8 @@ final class NioSocketStreamConnection extends AbstractNioStreamConnection {
             conduit.getSocketChannel().close();
         } catch (ClosedChannelException ignored) {
         } finally {
+            final NioTcpServer.AddressCount addressCount = this.addressCount;
+            if (addressCount != null) addressCount.release();
             final NioTcpServerHandle conduit = this.serverConduit;
             if (conduit!= null) conduit.channelClosed();
         }
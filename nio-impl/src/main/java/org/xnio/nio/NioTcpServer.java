@@ -20,22 +20,31 @@ package org.xnio.nio;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import org.jboss.logging.Logger;
+import org.xnio.IoThreadSelection;
 import org.xnio.IoUtils;
 import org.xnio.Option;
 import org.xnio.ChannelListener;
+import org.xnio.ChannelListeners;
 import org.xnio.OptionMap;
 import org.xnio.Options;
 import org.xnio.StreamConnection;
@@ -54,9 +63,16 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
 
     private volatile ChannelListener<? super NioTcpServer> acceptListener;
 
+    // one per accepting thread: the dedicated accept threads if the worker has any, otherwise the I/O threads
     private final NioTcpServerHandle[] handles;
+    // the number of the first accepting thread; the accept threads are numbered after the I/O threads
+    private final int firstHandleNumber;
+    // connections handed off by the accept threads, by I/O thread number; only touched by that I/O thread
+    private final HandOffQueue[] handedOff;
 
+    // the first of the listening channels; with accept sharding, there is one channel per thread
     private final ServerSocketChannel channel;
+    private final ServerSocketChannel[] channels;
     private final ServerSocket socket;
     private final Closeable mbeanHandle;
 
@@ -71,6 +87,10 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
             .add(Options.CONNECTION_LOW_WATER)
             .add(Options.READ_TIMEOUT)
             .add(Options.WRITE_TIMEOUT)
+            .add(Options.ACCEPT_BATCH_SIZE)
+            .add(Options.ACCEPT_THROTTLE_LAG)
+            .add(Options.ACCEPT_THROTTLE_TASKS)
+            .add(Options.CONNECTION_LIMIT_PER_ADDRESS)
             .create();
 
     @SuppressWarnings("unused")
@@ -87,7 +107,24 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
     private volatile int readTimeout;
     @SuppressWarnings("unused")
     private volatile int writeTimeout;
+    @SuppressWarnings("unused")
+    private volatile int acceptBatchSize;
     private volatile int tokenConnectionCount;
+    // how a used-up token is passed on, or null for round-robin
+    private final IoThreadSelection tokenSelection;
+    // accepts per readiness event, in power-of-two buckets
+    private final AtomicLongArray acceptBatchHistogram = new AtomicLongArray(8);
+    // in nanoseconds; 0 if accepts are not throttled by lag
+    private final long throttleLag;
+    // 0 if accepts are not throttled by the task queue
+    private final int throttleTasks;
+    private final int addressLimit;
+    // open connections by peer address, or null if there is no limit per address
+    private final ConcurrentMap<InetAddress, AddressCount> addressCounts;
+    @SuppressWarnings("unused")
+    private volatile long throttleCount;
+    @SuppressWarnings("unused")
+    private volatile long rejectedConnectionCount;
     volatile boolean resumed;
 
     private static final long CONN_LOW_MASK     = 0x000000007FFFFFFFL;
@@ -105,28 +142,49 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
     private static final AtomicIntegerFieldUpdater<NioTcpServer> sendBufferUpdater = AtomicIntegerFieldUpdater.newUpdater(NioTcpServer.class, "sendBuffer");
     private static final AtomicIntegerFieldUpdater<NioTcpServer> readTimeoutUpdater = AtomicIntegerFieldUpdater.newUpdater(NioTcpServer.class, "readTimeout");
     private static final AtomicIntegerFieldUpdater<NioTcpServer> writeTimeoutUpdater = AtomicIntegerFieldUpdater.newUpdater(NioTcpServer.class, "writeTimeout");
+    private static final AtomicIntegerFieldUpdater<NioTcpServer> acceptBatchSizeUpdater = AtomicIntegerFieldUpdater.newUpdater(NioTcpServer.class, "acceptBatchSize");
 
     private static final AtomicLongFieldUpdater<NioTcpServer> connectionStatusUpdater = AtomicLongFieldUpdater.newUpdater(NioTcpServer.class, "connectionStatus");
+    private static final AtomicLongFieldUpdater<NioTcpServer> throttleCountUpdater = AtomicLongFieldUpdater.newUpdater(NioTcpServer.class, "throttleCount");
+    private static final AtomicLongFieldUpdater<NioTcpServer> rejectedConnectionCountUpdater = AtomicLongFieldUpdater.newUpdater(NioTcpServer.class, "rejectedConnectionCount");
 
-    NioTcpServer(final NioXnioWorker worker, final ServerSocketChannel channel, final OptionMap optionMap) throws IOException {
+    NioTcpServer(final NioXnioWorker worker, final ServerSocketChannel[] channels, final OptionMap optionMap) throws IOException {
         super(worker);
-        this.channel = channel;
-        final WorkerThread[] threads = worker.getAll();
-        final int threadCount = threads.length;
-        if (threadCount == 0) {
+        this.channels = channels;
+        channel = channels[0];
+        final WorkerThread[] ioThreads = worker.getAll();
+        if (ioThreads.length == 0) {
             throw log.noThreads();
         }
-        final int tokens = optionMap.get(Options.BALANCING_TOKENS, -1);
+        final WorkerThread[] threads;
+        if (worker.getAcceptThreads().length > 0) {
+            threads = worker.getAcceptThreads();
+            handedOff = new HandOffQueue[ioThreads.length];
+            for (int i = 0; i < ioThreads.length; i++) {
+                handedOff[i] = new HandOffQueue();
+            }
+        } else {
+            threads = ioThreads;
+            handedOff = null;
+        }
+        final int threadCount = threads.length;
+        // the accept threads hand connections to the I/O threads by policy, so there is nothing for tokens to balance
+        final int tokens = handedOff == null ? optionMap.get(Options.BALANCING_TOKENS, -1) : -1;
         final int connections = optionMap.get(Options.BALANCING_CONNECTIONS, 16);
         if (tokens != -1) {
             if (tokens < 1 || tokens >= threadCount) {
                 throw log.balancingTokens();
             }
+            if (channels.length > 1) {
+                // a thread without a token would leave the connections queued on its own socket waiting
+                throw log.balancingTokensWithSharding();
+            }
             if (connections < 1) {
                 throw log.balancingConnectionCount();
             }
             tokenConnectionCount = connections;
         }
+        tokenSelection = tokens == -1 ? null : optionMap.get(Options.BALANCING_TOKEN_SELECTION);
         socket = channel.socket();
         if (optionMap.contains(Options.SEND_BUFFER)) {
             final int sendBufferSize = optionMap.get(Options.SEND_BUFFER, DEFAULT_BUFFER_SIZE);
@@ -150,6 +208,29 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
         if (optionMap.contains(Options.WRITE_TIMEOUT)) {
             writeTimeoutUpdater.lazySet(this, optionMap.get(Options.WRITE_TIMEOUT, 0));
         }
+        final int batchSize = optionMap.get(Options.ACCEPT_BATCH_SIZE, handedOff == null ? 1 : 64);
+        if (batchSize < 1) {
+            throw log.optionOutOfRange("ACCEPT_BATCH_SIZE");
+        }
+        acceptBatchSizeUpdater.lazySet(this, batchSize);
+        final int throttleLagMillis = optionMap.get(Options.ACCEPT_THROTTLE_LAG, 0);
+        if (throttleLagMillis < 0) {
+            throw log.optionOutOfRange("ACCEPT_THROTTLE_LAG");
+        }
+        throttleLag = throttleLagMillis * 1000000L;
+        throttleTasks = optionMap.get(Options.ACCEPT_THROTTLE_TASKS, 0);
+        if (throttleTasks < 0) {
+            throw log.optionOutOfRange("ACCEPT_THROTTLE_TASKS");
+        }
+        if ((throttleLag > 0L || throttleTasks > 0) && ! WorkerThread.isLagProbeEnabled()) {
+            // the load is only checked when the lag probe runs
+            throw log.acceptThrottleWithoutLagProbe();
+        }
+        addressLimit = optionMap.get(Options.CONNECTION_LIMIT_PER_ADDRESS, 0);
+        if (addressLimit < 0 || optionMap.contains(Options.CONNECTION_LIMIT_PER_ADDRESS) && addressLimit == 0) {
+            throw log.optionOutOfRange("CONNECTION_LIMIT_PER_ADDRESS");
+        }
+        addressCounts = addressLimit > 0 ? new ConcurrentHashMap<InetAddress, AddressCount>() : null;
         int perThreadLow, perThreadLowRem;
         int perThreadHigh, perThreadHighRem;
         if (optionMap.contains(Options.CONNECTION_HIGH_WATER) || optionMap.contains(Options.CONNECTION_LOW_WATER)) {
@@ -176,16 +257,27 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
         }
         final NioTcpServerHandle[] handles = new NioTcpServerHandle[threadCount];
         for (int i = 0, length = threadCount; i < length; i++) {
-            final SelectionKey key = threads[i].registerChannel(channel);
+            final SelectionKey key = threads[i].registerChannel(channels.length == 1 ? channel : channels[i]);
             handles[i] = new NioTcpServerHandle(this, key, threads[i], i < perThreadHighRem ? perThreadHigh + 1 : perThreadHigh, i < perThreadLowRem ? perThreadLow + 1 : perThreadLow);
             key.attach(handles[i]);
         }
         this.handles = handles;
+        firstHandleNumber = threads[0].getNumber();
+        if (throttleLag > 0L || throttleTasks > 0) {
+            for (NioTcpServerHandle handle : handles) {
+                handle.startThrottle();
+            }
+        }
         if (tokens > 0) {
             for (int i = 0; i < threadCount; i ++) {
                 handles[i].initializeTokenCount(i < tokens ? connections : 0);
             }
         }
+        if (tokenSelection == IoThreadSelection.LEAST_BYTES) {
+            for (NioTcpServerHandle handle : handles) {
+                handle.getWorkerThread().enableLoadSampling();
+            }
+        }
         mbeanHandle = NioXnio.register(new XnioServerMXBean() {
             public String getProviderName() {
                 return "nio";
@@ -225,6 +317,18 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
             public int getConnectionLimitLowWater() {
                 return getLowWater(connectionStatus);
             }
+
+            public long[] getAcceptsPerWakeupHistogram() {
+                return NioTcpServer.this.getAcceptsPerWakeupHistogram();
+            }
+
+            public long getThrottleCount() {
+                return throttleCount;
+            }
+
+            public long getRejectedConnectionCount() {
+                return rejectedConnectionCount;
+            }
         });
     }
 
@@ -240,9 +344,25 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
         try {
             channel.close();
         } finally {
+            for (int i = 1; i < channels.length; i++) {
+                safeClose(channels[i]);
+            }
             for (NioTcpServerHandle handle : handles) {
                 handle.getWorkerThread().cancelKey(handle.getSelectionKey());
             }
+            if (handedOff != null) {
+                for (final WorkerThread thread : worker.getAll()) {
+                    try {
+                        thread.execute(new Runnable() {
+                            public void run() {
+                                closeHandedOff(thread);
+                            }
+                        });
+                    } catch (RejectedExecutionException e) {
+                        // the I/O thread is exiting and closes its channels itself
+                    }
+                }
+            }
             safeClose(mbeanHandle);
         }
     }
@@ -273,6 +393,14 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
             return option.cast(Integer.valueOf(getHighWater(connectionStatus)));
         } else if (option == Options.CONNECTION_LOW_WATER) {
             return option.cast(Integer.valueOf(getLowWater(connectionStatus)));
+        } else if (option == Options.ACCEPT_BATCH_SIZE) {
+            return option.cast(Integer.valueOf(acceptBatchSize));
+        } else if (option == Options.ACCEPT_THROTTLE_LAG) {
+            return option.cast(Integer.valueOf((int) (throttleLag / 1000000L)));
+        } else if (option == Options.ACCEPT_THROTTLE_TASKS) {
+            return option.cast(Integer.valueOf(throttleTasks));
+        } else if (option == Options.CONNECTION_LIMIT_PER_ADDRESS) {
+            return addressLimit == 0 ? null : option.cast(Integer.valueOf(addressLimit));
         } else {
             return null;
         }
@@ -282,14 +410,19 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
         final Object old;
         if (option == Options.REUSE_ADDRESSES) {
             old = Boolean.valueOf(socket.getReuseAddress());
-            socket.setReuseAddress(Options.REUSE_ADDRESSES.cast(value, Boolean.FALSE).booleanValue());
+            final boolean newValue = Options.REUSE_ADDRESSES.cast(value, Boolean.FALSE).booleanValue();
+            for (ServerSocketChannel channel : channels) {
+                channel.socket().setReuseAddress(newValue);
+            }
         } else if (option == Options.RECEIVE_BUFFER) { 
             old = Integer.valueOf(socket.getReceiveBufferSize());
             final int newValue = Options.RECEIVE_BUFFER.cast(value, Integer.valueOf(DEFAULT_BUFFER_SIZE)).intValue();
             if (newValue < 1) {
                 throw log.optionOutOfRange("RECEIVE_BUFFER");
             }
-            socket.setReceiveBufferSize(newValue);
+            for (ServerSocketChannel channel : channels) {
+                channel.socket().setReceiveBufferSize(newValue);
+            }
         } else if (option == Options.SEND_BUFFER) {
             final int newValue = Options.SEND_BUFFER.cast(value, Integer.valueOf(DEFAULT_BUFFER_SIZE)).intValue();
             if (newValue < 1) {
@@ -311,6 +444,12 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
             old = Integer.valueOf(getHighWater(updateWaterMark(-1, Options.CONNECTION_HIGH_WATER.cast(value, Integer.valueOf(Integer.MAX_VALUE)).intValue())));
         } else if (option == Options.CONNECTION_LOW_WATER) {
             old = Integer.valueOf(getLowWater(updateWaterMark(Options.CONNECTION_LOW_WATER.cast(value, Integer.valueOf(Integer.MAX_VALUE)).intValue(), -1)));
+        } else if (option == Options.ACCEPT_BATCH_SIZE) {
+            final int newValue = Options.ACCEPT_BATCH_SIZE.cast(value, Integer.valueOf(handedOff == null ? 1 : 64)).intValue();
+            if (newValue < 1) {
+                throw log.optionOutOfRange("ACCEPT_BATCH_SIZE");
+            }
+            old = Integer.valueOf(acceptBatchSizeUpdater.getAndSet(this, newValue));
         } else {
             return null;
         }
@@ -375,26 +514,29 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
 
     public NioSocketStreamConnection accept() throws IOException {
         final WorkerThread current = WorkerThread.getCurrent();
-        final NioTcpServerHandle handle = handles[current.getNumber()];
+        if (handedOff != null) {
+            return worker.isIoThread(current) ? handedOff[current.getNumber()].connections.poll() : null;
+        }
+        final NioTcpServerHandle handle = getHandle(current.getNumber());
         if (! handle.getConnection()) {
             return null;
         }
         final SocketChannel accepted;
+        AddressCount addressCount = null;
         boolean ok = false;
         try {
-            accepted = channel.accept();
+            // with accept sharding, each thread accepts only from its own socket
+            accepted = ((ServerSocketChannel) handle.getSelectionKey().channel()).accept();
             if (accepted != null) try {
-                accepted.configureBlocking(false);
-                final Socket socket = accepted.socket();
-                socket.setKeepAlive(keepAlive != 0);
-                socket.setOOBInline(oobInline != 0);
-                socket.setTcpNoDelay(tcpNoDelay != 0);
-                final int sendBuffer = this.sendBuffer;
-                if (sendBuffer > 0) socket.setSendBufferSize(sendBuffer);
+                if (addressCounts != null && (addressCount = acquireAddress(accepted)) == null) {
+                    return null;
+                }
+                configureAccepted(accepted);
                 final SelectionKey selectionKey = current.registerChannel(accepted);
-                final NioSocketStreamConnection newConnection = new NioSocketStreamConnection(current, selectionKey, handle);
+                final NioSocketStreamConnection newConnection = new NioSocketStreamConnection(current, selectionKey, handle, addressCount);
                 newConnection.setOption(Options.READ_TIMEOUT, Integer.valueOf(readTimeout));
                 newConnection.setOption(Options.WRITE_TIMEOUT, Integer.valueOf(writeTimeout));
+                handle.connectionAccepted();
                 ok = true;
                 return newConnection;
             } finally {
@@ -404,6 +546,7 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
             return null;
         } finally {
             if (! ok) {
+                if (addressCount != null) addressCount.release();
                 handle.freeConnection();
             }
         }
@@ -411,6 +554,117 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
         return null;
     }
 
+    /**
+     * Count a new connection against the limit for its peer address.
+     *
+     * @param accepted the new connection
+     * @return the count of the peer address, or {@code null} if the connection must be rejected
+     */
+    private AddressCount acquireAddress(final SocketChannel accepted) {
+        final AddressCount addressCount = AddressCount.acquire(addressCounts, accepted.socket().getInetAddress(), addressLimit);
+        if (addressCount == null) {
+            rejectedConnectionCountUpdater.incrementAndGet(this);
+            tcpServerLog.tracef("Rejected connection from %s on %s", accepted.socket().getInetAddress(), this);
+        }
+        return addressCount;
+    }
+
+    private void configureAccepted(final SocketChannel accepted) throws IOException {
+        accepted.configureBlocking(false);
+        final Socket socket = accepted.socket();
+        socket.setKeepAlive(keepAlive != 0);
+        socket.setOOBInline(oobInline != 0);
+        socket.setTcpNoDelay(tcpNoDelay != 0);
+        final int sendBuffer = this.sendBuffer;
+        if (sendBuffer > 0) socket.setSendBufferSize(sendBuffer);
+    }
+
+    /**
+     * Accept up to a batch of pending connections on a dedicated accept thread, handing each one off to an I/O
+     * thread.  The I/O thread registers the channel itself, so the accept thread never waits on another selector.
+     *
+     * @param handle the handle of the current accept thread
+     */
+    void acceptAndHandOff(final NioTcpServerHandle handle) {
+        assert handedOff != null;
+        final ServerSocketChannel channel = (ServerSocketChannel) handle.getSelectionKey().channel();
+        final int batchSize = acceptBatchSize;
+        // a server left with more pending connections is selected again right away
+        while (handle.getBatchCount() < batchSize && handle.getConnection()) {
+            final SocketChannel accepted;
+            try {
+                accepted = channel.accept();
+            } catch (IOException e) {
+                handle.freeConnection();
+                return;
+            }
+            if (accepted == null) {
+                handle.freeConnection();
+                return;
+            }
+            AddressCount addressCount = null;
+            boolean ok = false;
+            try {
+                if (addressCounts != null && (addressCount = acquireAddress(accepted)) == null) {
+                    continue;
+                }
+                configureAccepted(accepted);
+                final WorkerThread thread = worker.chooseThread();
+                final AddressCount finalAddressCount = addressCount;
+                thread.execute(new Runnable() {
+                    public void run() {
+                        registerHandedOff(thread, accepted, handle, finalAddressCount);
+                    }
+                });
+                handle.connectionAccepted();
+                ok = true;
+            } catch (IOException e) {
+                // just this connection
+            } catch (RejectedExecutionException e) {
+                // the I/O thread is exiting
+            } finally {
+                if (! ok) {
+                    safeClose(accepted);
+                    if (addressCount != null) addressCount.release();
+                    handle.freeConnection();
+                }
+            }
+        }
+    }
+
+    void registerHandedOff(final WorkerThread current, final SocketChannel accepted, final NioTcpServerHandle handle, final AddressCount addressCount) {
+        final NioSocketStreamConnection newConnection;
+        if (! isOpen()) {
+            safeClose(accepted);
+            if (addressCount != null) addressCount.release();
+            handle.channelClosed();
+            return;
+        }
+        try {
+            final SelectionKey selectionKey = current.registerChannel(accepted);
+            newConnection = new NioSocketStreamConnection(current, selectionKey, handle, addressCount);
+            newConnection.setOption(Options.READ_TIMEOUT, Integer.valueOf(readTimeout));
+            newConnection.setOption(Options.WRITE_TIMEOUT, Integer.valueOf(writeTimeout));
+        } catch (IOException e) {
+            safeClose(accepted);
+            if (addressCount != null) addressCount.release();
+            handle.channelClosed();
+            return;
+        }
+        handedOff[current.getNumber()].connections.add(newConnection);
+        ChannelListeners.invokeChannelListener(this, acceptListener);
+        // a connection the listener did not take would otherwise never be closed
+        closeHandedOff(current);
+    }
+
+    private void closeHandedOff(final WorkerThread current) {
+        final ArrayDeque<NioSocketStreamConnection> deque = handedOff[current.getNumber()].connections;
+        NioSocketStreamConnection connection;
+        while ((connection = deque.poll()) != null) {
+            safeClose(connection);
+        }
+    }
+
     public String toString() {
         return String.format("TCP server (NIO) <%s>", Integer.toHexString(hashCode()));
     }
@@ -487,11 +741,161 @@ final class NioTcpServer extends AbstractNioChannel<NioTcpServer> implements Acc
         return getIoThread();
     }
 
+    int getAcceptBatchSize() {
+        return acceptBatchSize;
+    }
+
+    void acceptBatchCompleted(final int count) {
+        final int bucket = Math.min(32 - Integer.numberOfLeadingZeros(count), acceptBatchHistogram.length() - 1);
+        acceptBatchHistogram.incrementAndGet(bucket);
+    }
+
+    long[] getAcceptsPerWakeupHistogram() {
+        final long[] histogram = new long[acceptBatchHistogram.length()];
+        for (int i = 0; i < histogram.length; i++) {
+            histogram[i] = acceptBatchHistogram.get(i);
+        }
+        return histogram;
+    }
+
+    long getThrottleLag() {
+        return throttleLag;
+    }
+
+    int getThrottleTasks() {
+        return throttleTasks;
+    }
+
+    void throttled() {
+        throttleCountUpdater.incrementAndGet(this);
+    }
+
+    long getThrottleCount() {
+        return throttleCount;
+    }
+
+    long getRejectedConnectionCount() {
+        return rejectedConnectionCount;
+    }
+
+    boolean handsOff() {
+        return handedOff != null;
+    }
+
     NioTcpServerHandle getHandle(final int number) {
-        return handles[number];
+        return handles[number - firstHandleNumber];
     }
 
     int getTokenConnectionCount() {
         return tokenConnectionCount;
     }
+
+    /**
+     * Choose the thread to pass a used-up balancing token on to.
+     *
+     * @param current the thread giving up the token
+     * @return the thread to receive the token
+     */
+    WorkerThread getNextTokenThread(final WorkerThread current) {
+        final IoThreadSelection selection = tokenSelection;
+        if (selection == null) {
+            return current.getNextThread();
+        }
+        final NioTcpServerHandle[] handles = this.handles;
+        final int length = handles.length;
+        // start at a random thread so that ties are spread out
+        final Random random = IoUtils.getThreadLocalRandom();
+        final int start = random.nextInt(length);
+        if (selection == IoThreadSelection.POWER_OF_TWO_CHOICES) {
+            // compare just two distinct threads chosen at random
+            final WorkerThread first = getTokenCandidate(handles[start], current);
+            final WorkerThread second = getTokenCandidate(handles[(start + 1 + random.nextInt(length - 1)) % length], current);
+            if (first == null) {
+                return second == null ? current.getNextThread() : second;
+            } else if (second == null) {
+                return first;
+            } else {
+                return second.getRegisteredKeyCount() < first.getRegisteredKeyCount() ? second : first;
+            }
+        }
+        WorkerThread best = null;
+        long bestLoad = Long.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            final NioTcpServerHandle handle = handles[(start + i) % length];
+            final WorkerThread thread = handle.getWorkerThread();
+            if (thread == current || handle.holdsToken()) {
+                continue;
+            }
+            final long load;
+            switch (selection) {
+                case LEAST_KEYS: load = thread.getRegisteredKeyCount(); break;
+                case LEAST_BYTES: load = thread.getRecentBytesTransferred(); break;
+                case LEAST_LAG: load = thread.getEventLoopLag(); break;
+                default: load = 0L; break;
+            }
+            if (load < bestLoad) {
+                best = thread;
+                bestLoad = load;
+            }
+        }
+        // if every other thread seems to hold a token, the token is passed along until it finds one without
+        return best == null ? current.getNextThread() : best;
+    }
+
+    private static WorkerThread getTokenCandidate(final NioTcpServerHandle handle, final WorkerThread current) {
+        final WorkerThread thread = handle.getWorkerThread();
+        return thread == current || handle.holdsToken() ? null : thread;
+    }
+
+    /**
+     * The connections handed off to one I/O thread which the accept listener has not yet taken.  Only touched by that
+     * thread.
+     */
+    static final class HandOffQueue {
+        final ArrayDeque<NioSocketStreamConnection> connections = new ArrayDeque<NioSocketStreamConnection>();
+    }
+
+    /**
+     * The number of open connections from one peer address.  A count which drops to zero is retired with the value -1
+     * before it is removed, so that a racing acquire can never revive a count which is no longer in the map.
+     */
+    @SuppressWarnings("serial")
+    static final class AddressCount extends AtomicInteger {
+        private final ConcurrentMap<InetAddress, AddressCount> map;
+        private final InetAddress address;
+
+        private AddressCount(final ConcurrentMap<InetAddress, AddressCount> map, final InetAddress address) {
+            this.map = map;
+            this.address = address;
+        }
+
+        static AddressCount acquire(final ConcurrentMap<InetAddress, AddressCount> map, final InetAddress address, final int limit) {
+            for (;;) {
+                AddressCount count = map.get(address);
+                if (count == null) {
+                    final AddressCount newCount = new AddressCount(map, address);
+                    count = map.putIfAbsent(address, newCount);
+                    if (count == null) {
+                        count = newCount;
+                    }
+                }
+                int value;
+                while ((value = count.get()) >= 0) {
+                    if (value >= limit) {
+                        return null;
+                    }
+                    if (count.compareAndSet(value, value + 1)) {
+                        return count;
+                    }
+                }
+                // retired; a new count will take its place
+            }
+        }
+
+        void release() {
+            if (decrementAndGet() == 0 && compareAndSet(0, -1)) {
+                map.remove(address, this);
+            }
+        }
+    }
 }
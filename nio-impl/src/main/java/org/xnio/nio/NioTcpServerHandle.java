@@ -35,7 +35,13 @@ final class NioTcpServerHandle extends NioHandle {
     private int low;
     private int high;
     private int tokenCount = -1;
+    // whether this thread has an unused balancing token, for the threads choosing where to send theirs
+    private volatile boolean holdsToken;
     private boolean stopped;
+    // whether accepts are held off because this thread is overloaded
+    private boolean throttled;
+    // connections accepted during the current readiness event
+    private int batchCount;
 
     NioTcpServerHandle(final NioTcpServer server, final SelectionKey key, final WorkerThread thread, final int low, final int high) {
         super(thread, key);
@@ -50,7 +56,19 @@ final class NioTcpServerHandle extends NioHandle {
     }
 
     void handleReady(final int ops) {
-        ChannelListeners.invokeChannelListener(server, server.getAcceptListener());
+        batchCount = 0;
+        if (server.handsOff()) {
+            server.acceptAndHandOff(this);
+        } else {
+            final int batchSize = server.getAcceptBatchSize();
+            int last;
+            do {
+                last = batchCount;
+                ChannelListeners.invokeChannelListener(server, server.getAcceptListener());
+                // stop once the listener accepts nothing, or the connection limits or a suspend stop this thread
+            } while (batchCount > last && batchCount < batchSize && ! stopped && server.resumed);
+        }
+        server.acceptBatchCompleted(batchCount);
     }
 
     void forceTermination() {
@@ -68,7 +86,7 @@ final class NioTcpServerHandle extends NioHandle {
     void resume() {
         final WorkerThread thread = getWorkerThread();
         if (thread == currentThread()) {
-            if (! stopped && server.resumed) super.resume(SelectionKey.OP_ACCEPT);
+            if (! stopped && ! throttled && server.resumed) super.resume(SelectionKey.OP_ACCEPT);
         } else {
             thread.execute(new Runnable() {
                 public void run() {
@@ -81,7 +99,7 @@ final class NioTcpServerHandle extends NioHandle {
     void suspend() {
         final WorkerThread thread = getWorkerThread();
         if (thread == currentThread()) {
-            if (stopped || ! server.resumed) super.suspend(SelectionKey.OP_ACCEPT);
+            if (stopped || throttled || ! server.resumed) super.suspend(SelectionKey.OP_ACCEPT);
         } else {
             thread.execute(new Runnable() {
                 public void run() {
@@ -104,7 +122,7 @@ final class NioTcpServerHandle extends NioHandle {
         assert currentThread() == getWorkerThread();
         if (count-- <= low && tokenCount != 0 && stopped) {
             stopped = false;
-            if (server.resumed) {
+            if (server.resumed && ! throttled) {
                 super.resume(SelectionKey.OP_ACCEPT);
             }
         }
@@ -115,9 +133,10 @@ final class NioTcpServerHandle extends NioHandle {
         if (workerThread == currentThread()) {
             if (tokenCount == 0) {
                 tokenCount = newCount;
+                holdsToken = true;
                 if (count <= low && stopped) {
                     stopped = false;
-                    if (server.resumed) {
+                    if (server.resumed && ! throttled) {
                         super.resume(SelectionKey.OP_ACCEPT);
                     }
                 }
@@ -142,6 +161,7 @@ final class NioTcpServerHandle extends NioHandle {
         final int number = workerThread.getNumber();
         if (workerThread == currentThread()) {
             tokenCount = newCount;
+            holdsToken = newCount != 0;
             if (newCount == 0) {
                 stopped = true;
                 super.suspend(SelectionKey.OP_ACCEPT);
@@ -157,11 +177,12 @@ final class NioTcpServerHandle extends NioHandle {
 
     boolean getConnection() {
         assert currentThread() == getWorkerThread();
-        if (stopped) {
+        if (stopped || throttled) {
             return false;
         }
         if (tokenCount != -1 && --tokenCount == 0) {
-            setThreadNewCount(getWorkerThread().getNextThread(), server.getTokenConnectionCount());
+            holdsToken = false;
+            setThreadNewCount(server.getNextTokenThread(getWorkerThread()), server.getTokenConnectionCount());
         }
         if (++count >= high || tokenCount == 0) {
             stopped = true;
@@ -191,6 +212,71 @@ final class NioTcpServerHandle extends NioHandle {
         }
     }
 
+    void startThrottle() {
+        final WorkerThread thread = getWorkerThread();
+        thread.execute(new Runnable() {
+            public void run() {
+                thread.addThrottledHandle(NioTcpServerHandle.this);
+            }
+        });
+    }
+
+    /**
+     * Stop accepting while this thread is overloaded, and start again once it has recovered.  This is called by the
+     * thread's lag probe each time it runs, so it sees the lag the probe has just measured.  An accept thread does no
+     * channel work of its own, so it goes by the most loaded of the I/O threads it hands connections to instead.
+     *
+     * @return {@code true} to keep checking, or {@code false} once the server is closed
+     */
+    boolean checkLoad() {
+        assert currentThread() == getWorkerThread();
+        if (! server.isOpen()) {
+            return false;
+        }
+        long lag;
+        int tasks;
+        if (server.handsOff()) {
+            lag = 0L;
+            tasks = 0;
+            for (WorkerThread thread : getWorkerThread().getWorker().getAll()) {
+                lag = Math.max(lag, thread.getEventLoopLag());
+                tasks = Math.max(tasks, thread.getTaskQueueSize());
+            }
+        } else {
+            lag = getWorkerThread().getEventLoopLag();
+            tasks = getWorkerThread().getTaskQueueSize();
+        }
+        final long lagLimit = server.getThrottleLag();
+        final int taskLimit = server.getThrottleTasks();
+        if (! throttled) {
+            if (lagLimit > 0L && lag >= lagLimit || taskLimit > 0 && tasks >= taskLimit) {
+                throttled = true;
+                server.throttled();
+                super.suspend(SelectionKey.OP_ACCEPT);
+            }
+        } else if ((lagLimit == 0L || lag < lagLimit >> 1) && (taskLimit == 0 || tasks < taskLimit >> 1)) {
+            throttled = false;
+            if (! stopped && server.resumed) {
+                super.resume(SelectionKey.OP_ACCEPT);
+            }
+        }
+        return true;
+    }
+
+    void connectionAccepted() {
+        assert currentThread() == getWorkerThread();
+        batchCount++;
+    }
+
+    int getBatchCount() {
+        assert currentThread() == getWorkerThread();
+        return batchCount;
+    }
+
+    boolean holdsToken() {
+        return holdsToken;
+    }
+
     int getConnectionCount() {
         assert currentThread() == getWorkerThread();
         return count;
@@ -91,6 +91,7 @@ class NioUdpChannel extends AbstractNioChannel<NioUdpChannel> implements Multica
             return 0;
         } else {
             final int t = o - buffer.remaining();
+            handle.getWorkerThread().addBytesTransferred(t);
             if (addressBuffer != null) {
                 addressBuffer.setSourceAddress(sourceAddress);
                 addressBuffer.setDestinationAddress(null);
@@ -122,6 +123,7 @@ class NioUdpChannel extends AbstractNioChannel<NioUdpChannel> implements Multica
             return 0L;
         } else {
             final int t = o - buffer.remaining();
+            handle.getWorkerThread().addBytesTransferred(t);
             buffer.flip();
             Buffers.copy(buffers, offs, len, buffer);
             if (addressBuffer != null) {
@@ -133,7 +135,7 @@ class NioUdpChannel extends AbstractNioChannel<NioUdpChannel> implements Multica
     }
 
     public boolean sendTo(final SocketAddress target, final ByteBuffer buffer) throws IOException {
-        return datagramChannel.send(buffer, target) != 0;
+        return send(target, buffer);
     }
 
     public boolean sendTo(final SocketAddress target, final ByteBuffer[] buffers) throws IOException {
@@ -155,7 +157,16 @@ class NioUdpChannel extends AbstractNioChannel<NioUdpChannel> implements Multica
         final ByteBuffer buffer = ByteBuffer.allocate((int) o);
         Buffers.copy(buffer, buffers, offset, length);
         buffer.flip();
-        return datagramChannel.send(buffer, target) != 0;
+        return send(target, buffer);
+    }
+
+    private boolean send(final SocketAddress target, final ByteBuffer buffer) throws IOException {
+        final int res = datagramChannel.send(buffer, target);
+        if (res == 0) {
+            return false;
+        }
+        handle.getWorkerThread().addBytesTransferred(res);
+        return true;
     }
 
     public ChannelListener<? super NioUdpChannel> getReadListener() {
@@ -33,6 +33,7 @@ import org.xnio.Options;
 import org.xnio.Xnio;
 import org.xnio.OptionMap;
 import org.xnio.XnioWorker;
+import org.xnio.management.XnioIoThreadMXBean;
 import org.xnio.management.XnioProviderMXBean;
 import org.xnio.management.XnioServerMXBean;
 import org.xnio.management.XnioWorkerMXBean;
@@ -292,4 +293,8 @@ final class NioXnio extends Xnio {
     protected static Closeable register(XnioServerMXBean serverMXBean) {
         return Xnio.register(serverMXBean);
     }
+
+    protected static Closeable register(XnioIoThreadMXBean ioThreadMXBean) {
+        return Xnio.register(ioThreadMXBean);
+    }
 }
@@ -23,10 +23,13 @@ import java.io.IOException;
 import java.net.Inet6Address;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
 import java.net.StandardProtocolFamily;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.ServerSocketChannel;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
@@ -36,13 +39,16 @@ import org.xnio.Bits;
 import org.xnio.ChannelListener;
 import org.xnio.ChannelListeners;
 import org.xnio.ClosedWorkerException;
+import org.xnio.IoThreadSelection;
 import org.xnio.IoUtils;
 import org.xnio.OptionMap;
 import org.xnio.Options;
 import org.xnio.StreamConnection;
+import org.xnio.XnioIoThread;
 import org.xnio.XnioWorker;
 import org.xnio.channels.AcceptingChannel;
 import org.xnio.channels.MulticastMessageChannel;
+import org.xnio.management.XnioIoThreadMXBean;
 import org.xnio.management.XnioWorkerMXBean;
 
 import static org.xnio.IoUtils.safeClose;
@@ -60,7 +66,12 @@ final class NioXnioWorker extends XnioWorker {
     private volatile int state = 1;
 
     private final WorkerThread[] workerThreads;
+    private final WorkerThread[] acceptThreads;
+    private final StallWatchdog watchdog;
+    private final ConnectionRebalancer rebalancer;
+    private final IoThreadSelection threadSelection;
     private final Closeable mbeanHandle;
+    private final Closeable[] threadMBeanHandles;
 
     @SuppressWarnings("unused")
     private volatile Thread shutdownWaiter;
@@ -69,6 +80,27 @@ final class NioXnioWorker extends XnioWorker {
 
     private static final AtomicIntegerFieldUpdater<NioXnioWorker> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(NioXnioWorker.class, "state");
 
+    // StandardSocketOptions.SO_REUSEPORT, which is only present on Java 9 and later and only on some platforms
+    static final SocketOption<Boolean> REUSE_PORT;
+
+    static {
+        SocketOption<Boolean> reusePort = null;
+        try {
+            @SuppressWarnings("unchecked")
+            final SocketOption<Boolean> option = (SocketOption<Boolean>) StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            final ServerSocketChannel channel = ServerSocketChannel.open();
+            try {
+                if (channel.supportedOptions().contains(option)) {
+                    reusePort = option;
+                }
+            } finally {
+                IoUtils.safeClose(channel);
+            }
+        } catch (Throwable ignored) {
+        }
+        REUSE_PORT = reusePort;
+    }
+
     @SuppressWarnings("deprecation")
     NioXnioWorker(final NioXnio xnio, final ThreadGroup threadGroup, final OptionMap optionMap, final Runnable terminationTask) throws IOException {
         super(xnio, threadGroup, optionMap, terminationTask);
@@ -86,29 +118,71 @@ final class NioXnioWorker extends XnioWorker {
             throw log.optionOutOfRange("STACK_SIZE");
 
         }
+        final int busyPoll = optionMap.get(Options.WORKER_IO_BUSY_POLL, 0);
+        if (busyPoll < 0) {
+            throw log.optionOutOfRange("WORKER_IO_BUSY_POLL");
+        }
+        final boolean spinWait = optionMap.get(Options.WORKER_IO_SPIN_WAIT, true);
+        final int stallThreshold = optionMap.get(Options.WORKER_IO_STALL_THRESHOLD, 0);
+        if (stallThreshold < 0) {
+            throw log.optionOutOfRange("WORKER_IO_STALL_THRESHOLD");
+        }
+        final int taskBudget = optionMap.get(Options.WORKER_IO_TASK_BUDGET, 1024);
+        if (taskBudget < 0) {
+            throw log.optionOutOfRange("WORKER_IO_TASK_BUDGET");
+        }
+        final int keyBudget = optionMap.get(Options.WORKER_IO_KEY_BUDGET, 0);
+        if (keyBudget < 0) {
+            throw log.optionOutOfRange("WORKER_IO_KEY_BUDGET");
+        }
+        threadSelection = optionMap.get(Options.WORKER_IO_THREAD_SELECTION, IoThreadSelection.RANDOM);
+        final int rebalanceInterval = optionMap.get(Options.WORKER_IO_REBALANCE_INTERVAL, 0);
+        if (rebalanceInterval < 0) {
+            throw log.optionOutOfRange("WORKER_IO_REBALANCE_INTERVAL");
+        }
+        final int acceptThreadCount = optionMap.get(Options.WORKER_ACCEPT_THREADS, 0);
+        if (acceptThreadCount < 0) {
+            throw log.optionOutOfRange("WORKER_ACCEPT_THREADS");
+        }
+        // the byte load of each I/O thread is only sampled if something uses it
+        final boolean loadSampling = threadSelection == IoThreadSelection.LEAST_BYTES || rebalanceInterval > 0 && threadCount > 1;
         final String workerName = getName();
         WorkerThread[] workerThreads;
         workerThreads = new WorkerThread[threadCount];
+        final WorkerThread[] acceptThreads = new WorkerThread[acceptThreadCount];
         final boolean markWorkerThreadAsDaemon = optionMap.get(Options.THREAD_DAEMON, false);
         boolean ok = false;
         try {
             for (int i = 0; i < threadCount; i++) {
-                final WorkerThread workerThread = new WorkerThread(this, xnio.mainSelectorCreator.open(), String.format("%s I/O-%d", workerName, Integer.valueOf(i + 1)), threadGroup, workerStackSize, i);
+                final WorkerThread workerThread = new WorkerThread(this, xnio.mainSelectorCreator.open(), String.format("%s I/O-%d", workerName, Integer.valueOf(i + 1)), threadGroup, workerStackSize, i, busyPoll * 1000L, spinWait, stallThreshold > 0, taskBudget, keyBudget, loadSampling);
                 // Mark as daemon if the Options.THREAD_DAEMON has been set
                 if (markWorkerThreadAsDaemon) {
                     workerThread.setDaemon(true);
                 }
                 workerThreads[i] = workerThread;
             }
+            for (int i = 0; i < acceptThreadCount; i++) {
+                final WorkerThread acceptThread = new WorkerThread(this, xnio.mainSelectorCreator.open(), String.format("%s Accept-%d", workerName, Integer.valueOf(i + 1)), threadGroup, workerStackSize, threadCount + i, 0L, spinWait, false, taskBudget, keyBudget, false);
+                if (markWorkerThreadAsDaemon) {
+                    acceptThread.setDaemon(true);
+                }
+                acceptThreads[i] = acceptThread;
+            }
             ok = true;
         } finally {
             if (! ok) {
                 for (WorkerThread worker : workerThreads) {
                     if (worker != null) safeClose(worker.getSelector());
                 }
+                for (WorkerThread worker : acceptThreads) {
+                    if (worker != null) safeClose(worker.getSelector());
+                }
             }
         }
         this.workerThreads = workerThreads;
+        this.acceptThreads = acceptThreads;
+        watchdog = stallThreshold > 0 ? new StallWatchdog(this, threadGroup, workerName + " I/O watchdog", stallThreshold * 1000000L) : null;
+        rebalancer = rebalanceInterval > 0 && threadCount > 1 ? new ConnectionRebalancer(this, threadGroup, workerName + " I/O rebalancer", rebalanceInterval * 1000000L) : null;
         mbeanHandle = NioXnio.register(new XnioWorkerMXBean() {
             public String getProviderName() {
                 return "nio";
@@ -137,7 +211,145 @@ final class NioXnioWorker extends XnioWorker {
             public int getWorkerQueueSize() {
                 return NioXnioWorker.this.getWorkerQueueSize();
             }
+
+            public int getWorkerQueueHighWater() {
+                return NioXnioWorker.this.getWorkerQueueHighWater();
+            }
+
+            public long getRejectedTaskCount() {
+                return NioXnioWorker.this.getRejectedTaskCount();
+            }
+
+            public long getStartedTaskCount() {
+                return NioXnioWorker.this.getStartedTaskCount();
+            }
+
+            public long getTaskWaitTime() {
+                return NioXnioWorker.this.getTaskWaitTime();
+            }
+
+            public long getMaxTaskWaitTime() {
+                return NioXnioWorker.this.getMaxTaskWaitTime();
+            }
+
+            public long[] getTaskWaitTimeHistogram() {
+                return NioXnioWorker.this.getTaskWaitTimeHistogram();
+            }
+
+            public long[] getTaskRunTimeHistogram() {
+                return NioXnioWorker.this.getTaskRunTimeHistogram();
+            }
+
+            public int getActiveTaskCount() {
+                return NioXnioWorker.this.getActiveTaskCount();
+            }
+
+            public long getCompletedTaskCount() {
+                return NioXnioWorker.this.getCompletedTaskCount();
+            }
+
+            public Map<String, Long> getTopTaskClassRunTimes() {
+                return NioXnioWorker.this.getTopTaskClassRunTimes();
+            }
+
+            public long getStallCount() {
+                return NioXnioWorker.this.getStallCount();
+            }
         });
+        threadMBeanHandles = new Closeable[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            final WorkerThread workerThread = workerThreads[i];
+            threadMBeanHandles[i] = NioXnio.register(new XnioIoThreadMXBean() {
+                public String getProviderName() {
+                    return "nio";
+                }
+
+                public String getWorkerName() {
+                    return workerName;
+                }
+
+                public String getName() {
+                    return workerThread.getName();
+                }
+
+                public long getWakeupCount() {
+                    return workerThread.getWakeupCount();
+                }
+
+                public long getSuppressedWakeupCount() {
+                    return workerThread.getSuppressedWakeupCount();
+                }
+
+                public long getBusyPollTime() {
+                    return workerThread.getBusyPollTime();
+                }
+
+                public long getBlockedSelectTime() {
+                    return workerThread.getBlockedSelectTime();
+                }
+
+                public long getTaskTime() {
+                    return workerThread.getTaskTime();
+                }
+
+                public long getHandlerTime() {
+                    return workerThread.getHandlerTime();
+                }
+
+                public long getSelectCount() {
+                    return workerThread.getSelectCount();
+                }
+
+                public long getProcessedKeyCount() {
+                    return workerThread.getProcessedKeyCount();
+                }
+
+                public double getKeysPerSelect() {
+                    final long selectCount = workerThread.getSelectCount();
+                    return selectCount == 0L ? 0.0 : (double) workerThread.getProcessedKeyCount() / (double) selectCount;
+                }
+
+                public int getTaskQueueSize() {
+                    return workerThread.getTaskQueueSize();
+                }
+
+                public int getDelayedTaskCount() {
+                    return workerThread.getDelayedTaskCount();
+                }
+
+                public int getRegisteredKeyCount() {
+                    return workerThread.getRegisteredKeyCount();
+                }
+
+                public long getEventLoopLag() {
+                    return workerThread.getEventLoopLag();
+                }
+
+                public long getMaxEventLoopLag() {
+                    return workerThread.getMaxEventLoopLag();
+                }
+
+                public long getTaskBudgetExhaustedCount() {
+                    return workerThread.getTaskBudgetExhaustedCount();
+                }
+
+                public long getKeyBudgetExhaustedCount() {
+                    return workerThread.getKeyBudgetExhaustedCount();
+                }
+
+                public long getBytesTransferred() {
+                    return workerThread.getBytesTransferred();
+                }
+
+                public long getRecentBytesTransferred() {
+                    return workerThread.getRecentBytesTransferred();
+                }
+
+                public long getMigratedConnectionCount() {
+                    return workerThread.getMigratedConnectionCount();
+                }
+            });
+        }
     }
 
     void start() {
@@ -145,6 +357,16 @@ final class NioXnioWorker extends XnioWorker {
             openResourceUnconditionally();
             worker.start();
         }
+        for (WorkerThread acceptThread : acceptThreads) {
+            openResourceUnconditionally();
+            acceptThread.start();
+        }
+        if (watchdog != null) {
+            watchdog.start();
+        }
+        if (rebalancer != null) {
+            rebalancer.start();
+        }
     }
 
     protected WorkerThread chooseThread() {
@@ -157,7 +379,62 @@ final class NioXnioWorker extends XnioWorker {
             return workerThreads[0];
         }
         final Random random = IoUtils.getThreadLocalRandom();
-        return workerThreads[random.nextInt(length)];
+        switch (threadSelection) {
+            case LEAST_KEYS: {
+                // start at a random thread so that ties are spread out
+                final int start = random.nextInt(length);
+                WorkerThread best = workerThreads[start];
+                int bestKeys = best.getRegisteredKeyCount();
+                for (int i = 1; i < length && bestKeys > 0; i++) {
+                    final WorkerThread thread = workerThreads[(start + i) % length];
+                    final int keys = thread.getRegisteredKeyCount();
+                    if (keys < bestKeys) {
+                        best = thread;
+                        bestKeys = keys;
+                    }
+                }
+                return best;
+            }
+            case LEAST_BYTES: {
+                final int start = random.nextInt(length);
+                WorkerThread best = workerThreads[start];
+                long bestBytes = best.getRecentBytesTransferred();
+                for (int i = 1; i < length && bestBytes > 0L; i++) {
+                    final WorkerThread thread = workerThreads[(start + i) % length];
+                    final long bytes = thread.getRecentBytesTransferred();
+                    if (bytes < bestBytes) {
+                        best = thread;
+                        bestBytes = bytes;
+                    }
+                }
+                return best;
+            }
+            case LEAST_LAG: {
+                final int start = random.nextInt(length);
+                WorkerThread best = workerThreads[start];
+                long bestLag = best.getEventLoopLag();
+                for (int i = 1; i < length && bestLag > 0L; i++) {
+                    final WorkerThread thread = workerThreads[(start + i) % length];
+                    final long lag = thread.getEventLoopLag();
+                    if (lag < bestLag) {
+                        best = thread;
+                        bestLag = lag;
+                    }
+                }
+                return best;
+            }
+            case POWER_OF_TWO_CHOICES: {
+                final int first = random.nextInt(length);
+                // a second, distinct thread
+                final int second = (first + 1 + random.nextInt(length - 1)) % length;
+                final WorkerThread a = workerThreads[first];
+                final WorkerThread b = workerThreads[second];
+                return b.getRegisteredKeyCount() < a.getRegisteredKeyCount() ? b : a;
+            }
+            default: {
+                return workerThreads[random.nextInt(length)];
+            }
+        }
     }
 
     public int getIoThreadCount() {
@@ -168,23 +445,71 @@ final class NioXnioWorker extends XnioWorker {
         return workerThreads;
     }
 
+    /**
+     * Get the dedicated accept threads, which are numbered after the I/O threads.
+     *
+     * @return the accept threads (empty if servers accept on the I/O threads)
+     */
+    WorkerThread[] getAcceptThreads() {
+        return acceptThreads;
+    }
+
+    boolean isIoThread(final WorkerThread thread) {
+        final int number = thread.getNumber();
+        return number < workerThreads.length && workerThreads[number] == thread;
+    }
+
+    long getStallCount() {
+        return watchdog == null ? 0L : watchdog.getStallCount();
+    }
+
+    public void migrateConnection(final StreamConnection connection, final XnioIoThread thread) throws IOException {
+        if (! (connection instanceof NioSocketStreamConnection) || connection.getWorker() != this || ! (thread instanceof WorkerThread) || thread.getWorker() != this) {
+            throw log.cannotMigrate();
+        }
+        ((NioSocketStreamConnection) connection).getConduit().migrate((WorkerThread) thread);
+    }
+
     protected AcceptingChannel<StreamConnection> createTcpConnectionServer(final InetSocketAddress bindAddress, final ChannelListener<? super AcceptingChannel<StreamConnection>> acceptListener, final OptionMap optionMap) throws IOException {
         checkShutdown();
+        // with dedicated accept threads, the shards belong to those rather than to the I/O threads
+        final int acceptingThreadCount = acceptThreads.length > 0 ? acceptThreads.length : workerThreads.length;
+        final boolean sharded = REUSE_PORT != null && acceptingThreadCount > 1 && optionMap.get(Options.ACCEPT_SHARDING, false);
+        final ServerSocketChannel[] channels = new ServerSocketChannel[sharded ? acceptingThreadCount : 1];
+        boolean ok = false;
+        try {
+            channels[0] = openServerChannel(bindAddress, optionMap, sharded);
+            // the other shards take the port of the first, which may have been chosen by the system
+            final InetSocketAddress shardAddress = new InetSocketAddress(bindAddress.getAddress(), channels[0].socket().getLocalPort());
+            for (int i = 1; i < channels.length; i++) {
+                channels[i] = openServerChannel(shardAddress, optionMap, true);
+            }
+            final NioTcpServer server = new NioTcpServer(this, channels, optionMap);
+            server.setAcceptListener(acceptListener);
+            ok = true;
+            return server;
+        } finally {
+            if (! ok) {
+                IoUtils.safeClose(channels);
+            }
+        }
+    }
+
+    private static ServerSocketChannel openServerChannel(final InetSocketAddress bindAddress, final OptionMap optionMap, final boolean reusePort) throws IOException {
         boolean ok = false;
         final ServerSocketChannel channel = ServerSocketChannel.open();
         try {
             if (optionMap.contains(Options.RECEIVE_BUFFER)) channel.socket().setReceiveBufferSize(optionMap.get(Options.RECEIVE_BUFFER, -1));
             channel.socket().setReuseAddress(optionMap.get(Options.REUSE_ADDRESSES, true));
+            if (reusePort) channel.setOption(REUSE_PORT, Boolean.TRUE);
             channel.configureBlocking(false);
             if (optionMap.contains(Options.BACKLOG)) {
                 channel.socket().bind(bindAddress, optionMap.get(Options.BACKLOG, 128));
             } else {
                 channel.socket().bind(bindAddress);
             }
-            final NioTcpServer server = new NioTcpServer(this, channel, optionMap);
-            server.setAcceptListener(acceptListener);
             ok = true;
-            return server;
+            return channel;
         } finally {
             if (! ok) {
                 IoUtils.safeClose(channel);
@@ -251,6 +576,8 @@ final class NioXnioWorker extends XnioWorker {
             if (stateUpdater.compareAndSet(this, CLOSE_REQ, CLOSE_REQ | CLOSE_COMP)) {
                 log.tracef("CAS %s %08x -> %08x (close complete)", this, Integer.valueOf(CLOSE_REQ), Integer.valueOf(CLOSE_REQ | CLOSE_COMP));
                 safeUnpark(shutdownWaiterUpdater.getAndSet(this, null));
+                safeUnpark(watchdog);
+                safeUnpark(rebalancer);
                 final Runnable task = getTerminationTask();
                 if (task != null) try {
                     task.run();
@@ -275,6 +602,9 @@ final class NioXnioWorker extends XnioWorker {
             for (WorkerThread worker : workerThreads) {
                 worker.shutdown();
             }
+            for (WorkerThread worker : acceptThreads) {
+                worker.shutdown();
+            }
             shutDownTaskPool();
             return;
         }
@@ -346,6 +676,9 @@ final class NioXnioWorker extends XnioWorker {
 
     protected void taskPoolTerminated() {
         safeClose(mbeanHandle);
+        for (Closeable handle : threadMBeanHandles) {
+            safeClose(handle);
+        }
         closeResource();
     }
 
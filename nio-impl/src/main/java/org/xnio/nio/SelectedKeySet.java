@@ -0,0 +1,137 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import java.lang.reflect.Field;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.AccessController;
+import java.security.PrivilegedAction;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.xnio.nio.Log.selectorLog;
+
+/**
+ * A flat, array-backed selected key set which replaces the {@code HashSet} inside a JDK selector, so that the
+ * selecting thread can walk the ready keys by index without hashing, locking, or allocating an iterator.
+ * <p>
+ * The selector only ever adds to this set while selecting, and only the selecting thread may read or reset it.  The
+ * set does not detect duplicates: a key which is selected twice before the set is {@linkplain #reset() reset} (for
+ * example by a {@code selectNow()} issued while the ready keys are being processed) simply appears twice.
+ */
+final class SelectedKeySet extends AbstractSet<SelectionKey> {
+    private static final String SELECTOR_IMPL = "sun.nio.ch.SelectorImpl";
+
+    SelectionKey[] keys = new SelectionKey[1024];
+    int size;
+
+    /**
+     * Install a new selected key set into the given selector.
+     *
+     * @param selector the selector
+     * @return the installed set, or {@code null} if the selector implementation does not permit it
+     */
+    static SelectedKeySet install(final Selector selector) {
+        return AccessController.doPrivileged(new PrivilegedAction<SelectedKeySet>() {
+            public SelectedKeySet run() {
+                try {
+                    final Class<?> implClass = Class.forName(SELECTOR_IMPL, false, Selector.class.getClassLoader());
+                    if (! implClass.isInstance(selector)) {
+                        selectorLog.debugf("Selector %s is not a %s; using the default selected key set", selector, SELECTOR_IMPL);
+                        return null;
+                    }
+                    final Field selectedKeysField = implClass.getDeclaredField("selectedKeys");
+                    final Field publicSelectedKeysField = implClass.getDeclaredField("publicSelectedKeys");
+                    selectedKeysField.setAccessible(true);
+                    publicSelectedKeysField.setAccessible(true);
+                    final SelectedKeySet set = new SelectedKeySet();
+                    selectedKeysField.set(selector, set);
+                    publicSelectedKeysField.set(selector, set);
+                    return set;
+                } catch (Throwable t) {
+                    // not a HotSpot-style selector, or reflective access is denied
+                    selectorLog.debugf(t, "Unable to install selected key set into %s; using the default", selector);
+                    return null;
+                }
+            }
+        });
+    }
+
+    public boolean add(final SelectionKey key) {
+        if (key == null) {
+            return false;
+        }
+        final int size = this.size;
+        SelectionKey[] keys = this.keys;
+        if (size == keys.length) {
+            this.keys = keys = Arrays.copyOf(keys, size << 1);
+        }
+        keys[size] = key;
+        this.size = size + 1;
+        return true;
+    }
+
+    public boolean contains(final Object o) {
+        return false;
+    }
+
+    public boolean remove(final Object o) {
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        reset();
+    }
+
+    /**
+     * Clear this set, releasing the references it holds.
+     */
+    void reset() {
+        Arrays.fill(keys, 0, size, null);
+        size = 0;
+    }
+
+    public Iterator<SelectionKey> iterator() {
+        return new Iterator<SelectionKey>() {
+            private int idx;
+
+            public boolean hasNext() {
+                return idx < size;
+            }
+
+            public SelectionKey next() {
+                if (idx >= size) {
+                    throw new NoSuchElementException();
+                }
+                return keys[idx++];
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.xnio.nio.Log.log;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A thread which watches the I/O threads of a worker for a single handler or task which runs for longer than a
+ * threshold.  Such a handler stalls every other channel registered with the same thread, so each occurrence is
+ * counted and logged along with a sample of the stalled thread's stack.
+ */
+final class StallWatchdog extends Thread {
+
+    private static final String INVOKE_CLASS = "org.xnio.ChannelListeners";
+    private static final String INVOKE_METHOD = "invokeChannelListener";
+
+    private final NioXnioWorker worker;
+    private final long thresholdNanos;
+    // the start time of the last reported run of each thread, so that each stall is reported once
+    private final long[] reported;
+
+    private volatile long stallCount;
+
+    StallWatchdog(final NioXnioWorker worker, final ThreadGroup group, final String name, final long thresholdNanos) {
+        super(group, name);
+        this.worker = worker;
+        this.thresholdNanos = thresholdNanos;
+        reported = new long[worker.getIoThreadCount()];
+        setDaemon(true);
+    }
+
+    public void run() {
+        final long interval = Math.max(1000000L, thresholdNanos / 2L);
+        while (! worker.isTerminated()) {
+            LockSupport.parkNanos(this, interval);
+            check();
+        }
+    }
+
+    void check() {
+        final WorkerThread[] threads = worker.getAll();
+        for (int i = 0; i < threads.length; i++) {
+            final WorkerThread thread = threads[i];
+            final Object running = thread.getRunning();
+            if (running == null) {
+                continue;
+            }
+            final long since = thread.getRunningSince();
+            final long elapsed = System.nanoTime() - since;
+            if (elapsed < thresholdNanos || reported[i] == since) {
+                continue;
+            }
+            reported[i] = since;
+            stallCount ++;
+            final StackTraceElement[] stack = thread.getStackTrace();
+            if (thread.getRunning() == running && thread.getRunningSince() == since) {
+                // still stuck in the same run, so the sample shows the culprit
+                final Throwable sample = new Throwable("Stack sample of " + thread.getName());
+                sample.setStackTrace(stack);
+                log.ioThreadStalled(thread.getName(), listenerName(stack, running), elapsed / 1000000L, sample);
+            }
+        }
+    }
+
+    long getStallCount() {
+        return stallCount;
+    }
+
+    /**
+     * Find the class of the outermost channel listener in the stack sample, falling back to the class of the handle or
+     * task which is being run.
+     */
+    static String listenerName(final StackTraceElement[] stack, final Object running) {
+        for (int i = stack.length - 1; i > 0; i--) {
+            final StackTraceElement element = stack[i];
+            if (INVOKE_METHOD.equals(element.getMethodName()) && INVOKE_CLASS.equals(element.getClassName())) {
+                return stack[i - 1].getClassName();
+            }
+        }
+        return running.getClass().getName();
+    }
+}
@@ -0,0 +1,288 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+/**
+ * A hierarchical timer wheel.  Time is measured in abstract ticks; each level of the wheel has 64 slots, and each
+ * slot of level {@code n} spans {@code 64^n} ticks.  Entries are placed in the lowest level which can hold their
+ * expiration, and are cascaded down one or more levels as the wheel turns, so that scheduling and cancellation are
+ * both O(1) and advancing the wheel costs time proportional to the number of expired entries rather than the number
+ * of scheduled entries.
+ * <p>
+ * This class is not thread-safe; it is owned by a single thread.  Entries which are cancelled from another thread
+ * may report themselves as {@linkplain Entry#isCancelled() cancelled}, and are discarded the next time the wheel
+ * touches them.
+ */
+final class TimerWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final int levels;
+    private final long maxTicks;
+    /** Slot list heads and tails; slot {@code levels * SLOTS} holds expired entries awaiting {@link #pollExpired()}. */
+    private final Entry[] heads;
+    private final Entry[] tails;
+    /** One occupancy bitmap per level. */
+    private final long[] occupied;
+    private final int expiredSlot;
+    /** The next tick to be processed. */
+    private long base;
+    private int size;
+
+    /**
+     * Construct a new instance.
+     *
+     * @param maxTicks the longest delay, in ticks, that must be representable; longer delays are clamped
+     * @param base the first tick to process
+     */
+    TimerWheel(final long maxTicks, final long base) {
+        int levels = 1;
+        while (levels * SLOT_BITS < 62 && (1L << (levels * SLOT_BITS)) <= maxTicks) {
+            levels ++;
+        }
+        this.levels = levels;
+        this.maxTicks = levels * SLOT_BITS < 63 ? (1L << (levels * SLOT_BITS)) - 1L : Long.MAX_VALUE;
+        expiredSlot = levels * SLOTS;
+        heads = new Entry[expiredSlot + 1];
+        tails = new Entry[expiredSlot + 1];
+        occupied = new long[levels];
+        this.base = base;
+    }
+
+    /**
+     * Add an entry to the wheel.  An entry whose expiration is already past will be expired at the next
+     * {@link #advance(long)}.
+     *
+     * @param entry the entry, which must not already be in the wheel
+     * @param expires the tick on which the entry expires
+     */
+    void add(final Entry entry, final long expires) {
+        assert entry.slot == -1;
+        entry.expires = expires;
+        insert(entry);
+        size ++;
+    }
+
+    private void insert(final Entry entry) {
+        final long base = this.base;
+        long expires = entry.expires;
+        long delta = expires - base;
+        final int slot;
+        if (delta < 0L) {
+            // overdue; it goes in the slot which is processed next
+            slot = (int) (base & SLOT_MASK);
+        } else {
+            if (delta > maxTicks) {
+                entry.expires = expires = base + maxTicks;
+                delta = maxTicks;
+            }
+            int level = 0;
+            while ((delta >>> ((level + 1) * SLOT_BITS)) != 0L) {
+                level ++;
+            }
+            slot = (level << SLOT_BITS) | (int) ((expires >>> (level * SLOT_BITS)) & SLOT_MASK);
+        }
+        link(entry, slot);
+    }
+
+    /**
+     * Remove an entry from the wheel, if it is present.
+     *
+     * @param entry the entry
+     * @return {@code true} if the entry was present in the wheel or in the expired list
+     */
+    boolean remove(final Entry entry) {
+        final int slot = entry.slot;
+        if (slot == -1) {
+            return false;
+        }
+        unlink(entry);
+        if (slot != expiredSlot) {
+            size --;
+        }
+        return true;
+    }
+
+    /**
+     * Process all ticks up to and including the given tick, moving expired entries to the expired list.
+     *
+     * @param now the current tick
+     */
+    void advance(final long now) {
+        final long[] occupied = this.occupied;
+        while (base <= now) {
+            if (size == 0) {
+                base = now + 1L;
+                return;
+            }
+            final int index = (int) (base & SLOT_MASK);
+            if (index == 0) {
+                // cascade each level whose current slot has just come around
+                for (int level = 1; level < levels; level ++) {
+                    final int levelIndex = (int) ((base >>> (level * SLOT_BITS)) & SLOT_MASK);
+                    cascade((level << SLOT_BITS) | levelIndex);
+                    if (levelIndex != 0) {
+                        break;
+                    }
+                }
+            }
+            Entry entry = heads[index];
+            while (entry != null) {
+                final Entry next = entry.next;
+                unlink(entry);
+                size --;
+                if (! entry.isCancelled()) {
+                    link(entry, expiredSlot);
+                }
+                entry = next;
+            }
+            base ++;
+            // skip directly to the next occupied level-0 slot or the next cascade, whichever comes first
+            final int nextIndex = (int) (base & SLOT_MASK);
+            if (nextIndex != 0) {
+                final long bits = occupied[0] >>> nextIndex;
+                final long next = bits == 0L ? (base & ~(long) SLOT_MASK) + SLOTS : base + Long.numberOfTrailingZeros(bits);
+                base = Math.min(next, now + 1L);
+            }
+        }
+    }
+
+    private void cascade(final int slot) {
+        Entry entry = heads[slot];
+        while (entry != null) {
+            final Entry next = entry.next;
+            unlink(entry);
+            if (entry.isCancelled()) {
+                size --;
+            } else {
+                insert(entry);
+            }
+            entry = next;
+        }
+    }
+
+    /**
+     * Remove and return the next expired entry.
+     *
+     * @return the expired entry, or {@code null} if there are none
+     */
+    Entry pollExpired() {
+        final Entry entry = heads[expiredSlot];
+        if (entry != null) {
+            unlink(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Get the next tick at which {@link #advance(long)} may have work to do.  This is the exact expiration of the
+     * soonest entry if it is in the lowest level, or else the tick at which the soonest higher-level slot is cascaded.
+     *
+     * @return the tick, or {@link Long#MAX_VALUE} if the wheel is empty
+     */
+    long nextTick() {
+        if (size == 0) {
+            return Long.MAX_VALUE;
+        }
+        final long base = this.base;
+        final long[] occupied = this.occupied;
+        long bits = occupied[0];
+        long result = Long.MAX_VALUE;
+        if (bits != 0L) {
+            result = base + Long.numberOfTrailingZeros(Long.rotateRight(bits, (int) (base & SLOT_MASK)));
+        }
+        for (int level = 1; level < levels; level ++) {
+            bits = occupied[level];
+            if (bits != 0L) {
+                final int shift = level * SLOT_BITS;
+                // the first tick at or after base on which this level cascades
+                final long boundary = (base + (1L << shift) - 1L) >>> shift;
+                final int distance = Long.numberOfTrailingZeros(Long.rotateRight(bits, (int) (boundary & SLOT_MASK)));
+                result = Math.min(result, (boundary + distance) << shift);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Get the number of entries in the wheel, including entries cancelled from other threads which have not yet
+     * been discarded, but not including expired entries awaiting {@link #pollExpired()}.
+     *
+     * @return the number of entries
+     */
+    int size() {
+        return size;
+    }
+
+    private void link(final Entry entry, final int slot) {
+        // append, so that entries which expire on the same tick run in the order they were added
+        final Entry tail = tails[slot];
+        entry.slot = slot;
+        entry.prev = tail;
+        entry.next = null;
+        if (tail != null) {
+            tail.next = entry;
+        } else {
+            heads[slot] = entry;
+            if (slot != expiredSlot) {
+                occupied[slot >>> SLOT_BITS] |= 1L << (slot & SLOT_MASK);
+            }
+        }
+        tails[slot] = entry;
+    }
+
+    private void unlink(final Entry entry) {
+        final int slot = entry.slot;
+        final Entry prev = entry.prev;
+        final Entry next = entry.next;
+        if (prev == null) {
+            heads[slot] = next;
+            if (next == null && slot != expiredSlot) {
+                occupied[slot >>> SLOT_BITS] &= ~(1L << (slot & SLOT_MASK));
+            }
+        } else {
+            prev.next = next;
+        }
+        if (next == null) {
+            tails[slot] = prev;
+        } else {
+            next.prev = prev;
+        }
+        entry.prev = entry.next = null;
+        entry.slot = -1;
+    }
+
+    /**
+     * An entry in a timer wheel.
+     */
+    abstract static class Entry {
+        Entry prev;
+        Entry next;
+        long expires;
+        int slot = -1;
+
+        /**
+         * Determine whether this entry has been cancelled and may be silently discarded.
+         *
+         * @return {@code true} if the entry is cancelled
+         */
+        abstract boolean isCancelled();
+    }
+}
@@ -19,6 +19,9 @@
 package org.xnio.nio;
 
 import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.channels.CancelledKeyException;
@@ -31,15 +34,13 @@ import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.channels.spi.AbstractSelectableChannel;
 import java.security.AccessController;
-import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Iterator;
-import java.util.Queue;
 import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.jboss.logging.Logger;
@@ -81,28 +82,124 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
     private static final String FQCN = WorkerThread.class.getName();
     private static final boolean OLD_LOCKING;
     private static final boolean THREAD_SAFE_SELECTION_KEYS;
+    private static final long TIMER_TICK;
+    private static final boolean OPTIMIZE_SELECTED_KEYS;
+    private static final long LAG_PROBE_INTERVAL;
+    private static final long LOAD_SAMPLE_INTERVAL;
     private static final long START_TIME = System.nanoTime();
+    private static final int WAKEUP_COUNT_CELLS;
+    private static final int WAKEUP_COUNT_STRIDE = 8;
+    // Thread.onSpinWait(), where available
+    private static final MethodHandle ON_SPIN_WAIT;
 
     private final Selector selector;
-    private final Object workLock = new Object();
-
-    private final Queue<Runnable> selectorWorkQueue = new ArrayDeque<Runnable>();
-    private final TreeSet<TimeKey> delayWorkQueue = new TreeSet<TimeKey>();
+    private final long busyPollNanos;
+    private final boolean spinWait;
+    // whether the handler or task being run is published for the stall watchdog
+    private final boolean trackRunning;
+    // the most tasks, and ready keys, handled in one pass of the loop
+    private final int taskBudget;
+    private final int keyBudget;
+    // non-null if the selector's own selected key set was replaced
+    private final SelectedKeySet selectedKeySet;
+
+    private final MpscQueue<Runnable> selectorWorkQueue = new MpscQueue<Runnable>();
+    // timer keys scheduled from other threads, waiting to be added to the wheel
+    private final MpscQueue<TimeKey> timerQueue = new MpscQueue<TimeKey>();
+    // owned by this thread
+    private final TimerWheel timerWheel;
+    // the time (relative to START_TIME) until which this thread may be blocked in select; read by other threads
+    private volatile long plannedWakeup = Long.MAX_VALUE;
 
     private volatile int state;
 
     private static final int SHUTDOWN = (1 << 31);
 
+    // whether this thread is blocked in select, and if so whether someone has already woken it
+    private volatile int selectState;
+
+    private static final int SELECT_RUNNING = 0;
+    private static final int SELECT_BLOCKING = 1;
+    private static final int SELECT_WOKEN = 2;
+
+    // counted by this thread as it returns from a select which another thread woke
+    private volatile long wakeupCount;
+    // wakeups which other threads skipped, in cells chosen by the calling thread's ID and spaced a cache line apart, so
+    // that callers on different cores seldom contend
+    private final AtomicLongArray suppressedWakeupCounts = new AtomicLongArray(WAKEUP_COUNT_CELLS * WAKEUP_COUNT_STRIDE);
+
+    // event loop statistics, written only by this thread; published with lazySet so that the loop does not fence
+    private volatile long busyPollTime;
+    private volatile long blockedSelectTime;
+    private volatile long taskTime;
+    private volatile long handlerTime;
+    private volatile long selectCount;
+    private volatile long processedKeyCount;
+    private volatile int delayedTaskCount;
+    private volatile long eventLoopLag;
+    private volatile long maxEventLoopLag;
+    private volatile long taskBudgetExhaustedCount;
+    private volatile long keyBudgetExhaustedCount;
+    private volatile long migratedConnectionCount;
+    // accept handles which throttle on this thread's load, checked each time the lag probe runs; only touched by this thread
+    private NioTcpServerHandle[] throttledHandles = new NioTcpServerHandle[0];
+    // whether bytes moved are counted and sampled; only ever goes from false to true
+    private volatile boolean loadSampling;
+    // bytes moved by channels of this thread; written by this thread, and seldom by others (an estimate only)
+    private volatile long bytesTransferred;
+    // decaying average of bytes moved per load sample interval, written only by this thread
+    private volatile long recentBytesTransferred;
+    // the load sampler, once armed, and the number of internal timers on the wheel; only touched by this thread
+    private LoadSampler loadSampler;
+    private int internalTimers;
+
+    // the handler or task currently being run, or null; its start time is published by the write of running
+    private long runningSince;
+    private volatile Object running;
+
     private static final AtomicIntegerFieldUpdater<WorkerThread> stateUpdater = AtomicIntegerFieldUpdater.newUpdater(WorkerThread.class, "state");
+    private static final AtomicIntegerFieldUpdater<WorkerThread> selectStateUpdater = AtomicIntegerFieldUpdater.newUpdater(WorkerThread.class, "selectState");
+    private static final AtomicLongFieldUpdater<WorkerThread> wakeupCountUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "wakeupCount");
+    private static final AtomicLongFieldUpdater<WorkerThread> busyPollTimeUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "busyPollTime");
+    private static final AtomicLongFieldUpdater<WorkerThread> blockedSelectTimeUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "blockedSelectTime");
+    private static final AtomicLongFieldUpdater<WorkerThread> taskTimeUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "taskTime");
+    private static final AtomicLongFieldUpdater<WorkerThread> handlerTimeUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "handlerTime");
+    private static final AtomicLongFieldUpdater<WorkerThread> selectCountUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "selectCount");
+    private static final AtomicLongFieldUpdater<WorkerThread> processedKeyCountUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "processedKeyCount");
+    private static final AtomicLongFieldUpdater<WorkerThread> taskBudgetExhaustedCountUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "taskBudgetExhaustedCount");
+    private static final AtomicLongFieldUpdater<WorkerThread> keyBudgetExhaustedCountUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "keyBudgetExhaustedCount");
+    private static final AtomicLongFieldUpdater<WorkerThread> migratedConnectionCountUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "migratedConnectionCount");
+    private static final AtomicLongFieldUpdater<WorkerThread> bytesTransferredUpdater = AtomicLongFieldUpdater.newUpdater(WorkerThread.class, "bytesTransferred");
+    private static final AtomicIntegerFieldUpdater<TimeKey> timeKeyStateUpdater = AtomicIntegerFieldUpdater.newUpdater(TimeKey.class, "state");
 
     static {
         OLD_LOCKING = Boolean.parseBoolean(AccessController.doPrivileged(new ReadPropertyAction("xnio.nio.old-locking", "false")));
         THREAD_SAFE_SELECTION_KEYS = Boolean.parseBoolean(AccessController.doPrivileged(new ReadPropertyAction("xnio.xnio.thread-safe-selection-keys", "false")));
+        OPTIMIZE_SELECTED_KEYS = Boolean.parseBoolean(AccessController.doPrivileged(new ReadPropertyAction("xnio.nio.optimize-selected-keys", "false")));
+        TIMER_TICK = Math.max(1L, Long.parseLong(AccessController.doPrivileged(new ReadPropertyAction("xnio.nio.timer-tick", "1")))) * 1000000L;
+        LAG_PROBE_INTERVAL = Math.max(0L, Long.parseLong(AccessController.doPrivileged(new ReadPropertyAction("xnio.nio.lag-probe-interval", "1000")))) * 1000000L;
+        WAKEUP_COUNT_CELLS = Math.min(64, Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1);
+        LOAD_SAMPLE_INTERVAL = Math.max(1L, Long.parseLong(AccessController.doPrivileged(new ReadPropertyAction("xnio.nio.load-sample-interval", "1000")))) * 1000000L;
+        MethodHandle onSpinWait;
+        try {
+            onSpinWait = MethodHandles.publicLookup().findStatic(Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        } catch (Throwable ignored) {
+            onSpinWait = null;
+        }
+        ON_SPIN_WAIT = onSpinWait;
     }
 
-    WorkerThread(final NioXnioWorker worker, final Selector selector, final String name, final ThreadGroup group, final long stackSize, final int number) {
+    WorkerThread(final NioXnioWorker worker, final Selector selector, final String name, final ThreadGroup group, final long stackSize, final int number, final long busyPollNanos, final boolean spinWait, final boolean trackRunning, final int taskBudget, final int keyBudget, final boolean loadSampling) {
         super(worker, number, group, name, stackSize);
         this.selector = selector;
+        this.busyPollNanos = busyPollNanos;
+        this.spinWait = spinWait && ON_SPIN_WAIT != null;
+        this.trackRunning = trackRunning;
+        this.taskBudget = taskBudget == 0 ? Integer.MAX_VALUE : taskBudget;
+        this.keyBudget = keyBudget == 0 ? Integer.MAX_VALUE : keyBudget;
+        this.loadSampling = loadSampling;
+        selectedKeySet = OPTIMIZE_SELECTED_KEYS ? SelectedKeySet.install(selector) : null;
+        timerWheel = new TimerWheel(LONGEST_DELAY * 1000000L / TIMER_TICK, (nanoTime() - START_TIME) / TIMER_TICK);
     }
 
     static WorkerThread getCurrent() {
@@ -423,54 +520,74 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
         final Selector selector = this.selector;
         try {
             log.tracef("Starting worker thread %s", this);
-            final Object lock = workLock;
-            final Queue<Runnable> workQueue = selectorWorkQueue;
-            final TreeSet<TimeKey> delayQueue = delayWorkQueue;
+            final MpscQueue<Runnable> workQueue = selectorWorkQueue;
+            final MpscQueue<TimeKey> timerQueue = this.timerQueue;
+            final TimerWheel timerWheel = this.timerWheel;
             log.debugf("Started channel thread '%s', selector %s", currentThread().getName(), selector);
             Runnable task;
-            Iterator<TimeKey> iterator;
+            int tasksRun;
             long delayTime = Long.MAX_VALUE;
             Set<SelectionKey> selectedKeys;
             SelectionKey[] keys = new SelectionKey[16];
             int oldState;
             int keyCount;
+            // ready keys left over from the last pass because the key budget was exhausted
+            int pendingKeys = 0;
+            int processed;
+            long phaseStart;
+            long now;
+            // the lag probe and load sampler are not counted as delayed tasks
+            if (loadSampling) {
+                armLoadSampler();
+            }
+            if (LAG_PROBE_INTERVAL > 0L) {
+                new LagProbe().arm();
+                internalTimers ++;
+            }
             for (;;) {
-                // Run all tasks
-                do {
-                    synchronized (lock) {
+                // Run tasks, up to the task budget
+                phaseStart = nanoTime();
+                tasksRun = 0;
+                for (;;) {
+                    task = workQueue.poll();
+                    if (task == null) {
+                        runTimers();
                         task = workQueue.poll();
                         if (task == null) {
-                            iterator = delayQueue.iterator();
-                            delayTime = Long.MAX_VALUE;
-                            if (iterator.hasNext()) {
-                                final long now = nanoTime();
-                                do {
-                                    final TimeKey key = iterator.next();
-                                    if (key.deadline <= (now - START_TIME)) {
-                                        workQueue.add(key.command);
-                                        iterator.remove();
-                                    } else {
-                                        delayTime = key.deadline - (now - START_TIME);
-                                        // the rest are in the future
-                                        break;
-                                    }
-                                } while (iterator.hasNext());
-                            }
-                            task = workQueue.poll();
+                            break;
                         }
                     }
                     safeRun(task);
-                } while (task != null);
-                // all tasks have been run
+                    if (++ tasksRun == taskBudget) {
+                        if (! workQueue.isEmpty()) {
+                            // the remaining tasks wait until ready keys have been handled, but timers do not
+                            taskBudgetExhaustedCountUpdater.lazySet(this, taskBudgetExhaustedCount + 1L);
+                            runTimers();
+                        }
+                        break;
+                    }
+                }
+                now = nanoTime();
+                taskTimeUpdater.lazySet(this, taskTime + (now - phaseStart));
+                if (delayedTaskCount != timerWheel.size() - internalTimers) {
+                    delayedTaskCount = timerWheel.size() - internalTimers;
+                }
+                final long nextTick = timerWheel.nextTick();
+                if (nextTick == Long.MAX_VALUE) {
+                    plannedWakeup = delayTime = Long.MAX_VALUE;
+                } else {
+                    final long wakeup = nextTick * TIMER_TICK;
+                    plannedWakeup = wakeup;
+                    delayTime = Math.max(0L, wakeup - (now - START_TIME));
+                }
+                // all tasks have been run, or the budget is used up
                 oldState = state;
                 if ((oldState & SHUTDOWN) != 0) {
-                    synchronized (lock) {
-                        keyCount = selector.keys().size();
-                        state = keyCount | SHUTDOWN;
-                        if (keyCount == 0 && workQueue.isEmpty()) {
-                            // no keys or tasks left, shut down (delay tasks are discarded)
-                            return;
-                        }
+                    keyCount = selector.keys().size();
+                    state = keyCount | SHUTDOWN;
+                    if (keyCount == 0 && workQueue.isEmpty()) {
+                        // no keys or tasks left, shut down (delay tasks are discarded)
+                        return;
                     }
                     synchronized (selector) {
                         final Set<SelectionKey> keySet = selector.keys();
@@ -491,19 +608,38 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
                         }
                     }
                     Arrays.fill(keys, 0, keys.length, null);
+                    pendingKeys = 0;
+                    if (selectedKeySet != null) {
+                        selectedKeySet.reset();
+                    }
                 }
                 // perform select
                 try {
                     if ((oldState & SHUTDOWN) != 0) {
                         selectorLog.tracef("Beginning select on %s (shutdown in progress)", selector);
                         selector.selectNow();
-                    } else if (delayTime == Long.MAX_VALUE) {
-                        selectorLog.tracef("Beginning select on %s", selector);
-                        selector.select();
-                    } else {
-                        final long millis = 1L + delayTime / 1000000L;
-                        selectorLog.tracef("Beginning select on %s (with timeout)", selector);
-                        selector.select(millis);
+                    } else if (pendingKeys > 0) {
+                        selectorLog.tracef("Beginning select on %s (ready keys pending)", selector);
+                        selector.selectNow();
+                    } else if (busyPollNanos == 0L || ! busyPoll(delayTime)) {
+                        // from here on, other threads must wake us; but work which they queued before they could
+                        // see this state would otherwise go unnoticed, so check once more before blocking
+                        selectState = SELECT_BLOCKING;
+                        if (! workQueue.isEmpty() || ! timerQueue.isEmpty()) {
+                            selector.selectNow();
+                        } else {
+                            final long start = nanoTime();
+                            if (delayTime == Long.MAX_VALUE) {
+                                selectorLog.tracef("Beginning select on %s", selector);
+                                selector.select();
+                            } else {
+                                // the delay is recomputed here because busy polling may have consumed some of it
+                                final long millis = 1L + Math.max(0L, plannedWakeup - (start - START_TIME)) / 1000000L;
+                                selectorLog.tracef("Beginning select on %s (with timeout)", selector);
+                                selector.select(millis);
+                            }
+                            blockedSelectTimeUpdater.lazySet(this, blockedSelectTime + (nanoTime() - start));
+                        }
                     }
                 } catch (CancelledKeyException ignored) {
                     // Mac and other buggy implementations sometimes spits these out
@@ -511,53 +647,173 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
                 } catch (IOException e) {
                     selectorLog.selectionError(e);
                     // hopefully transient; should never happen
+                } finally {
+                    // swapped rather than written, so that a wakeup which lands just now is still counted
+                    if (selectStateUpdater.getAndSet(this, SELECT_RUNNING) == SELECT_WOKEN) {
+                        wakeupCountUpdater.lazySet(this, wakeupCount + 1L);
+                    }
                 }
                 selectorLog.tracef("Selected on %s", selector);
-                // iterate the ready key set
-                synchronized (selector) {
-                    selectedKeys = selector.selectedKeys();
-                    synchronized (selectedKeys) {
-                        // copy so that handlers can safely cancel keys
-                        keys = selectedKeys.toArray(keys);
-                        Arrays.fill(keys, selectedKeys.size(), keys.length, null);
-                        selectedKeys.clear();
+                // iterate the ready key set, up to the key budget; keys left over from the last pass come first, and a
+                // key which was selected again meanwhile is handled twice, which handlers tolerate
+                phaseStart = nanoTime();
+                processed = 0;
+                if (selectedKeySet != null) {
+                    // only this thread touches the set; a handler may select again (see cancelKey), which can
+                    // append keys and reallocate the array, so re-read both on each pass
+                    while (processed < selectedKeySet.size && processed < keyBudget) {
+                        final SelectionKey[] selected = selectedKeySet.keys;
+                        final SelectionKey key = selected[processed];
+                        selected[processed] = null;
+                        handleSelected(key);
+                        processed ++;
                     }
-                }
-                for (int i = 0; i < keys.length; i++) {
-                    final SelectionKey key = keys[i];
-                    if (key == null) break; //end of list
-                    keys[i] = null;
-                    final int ops;
-                    try {
-                        ops = key.interestOps();
-                        if (ops != 0) {
-                            selectorLog.tracef("Selected key %s for %s", key, key.channel());
-                            final NioHandle handle = (NioHandle) key.attachment();
-                            if (handle == null) {
-                                cancelKey(key);
-                            } else {
-                                handle.handleReady(key.readyOps());
+                    keyCount = selectedKeySet.size;
+                    pendingKeys = keyCount - processed;
+                    if (pendingKeys > 0) {
+                        final SelectionKey[] selected = selectedKeySet.keys;
+                        System.arraycopy(selected, processed, selected, 0, pendingKeys);
+                        Arrays.fill(selected, pendingKeys, keyCount, null);
+                        keyBudgetExhaustedCountUpdater.lazySet(this, keyBudgetExhaustedCount + 1L);
+                    }
+                    selectedKeySet.size = pendingKeys;
+                } else {
+                    synchronized (selector) {
+                        selectedKeys = selector.selectedKeys();
+                        synchronized (selectedKeys) {
+                            // copy so that handlers can safely cancel keys
+                            keyCount = pendingKeys + selectedKeys.size();
+                            if (keyCount > keys.length) {
+                                keys = Arrays.copyOf(keys, Math.max(keyCount, keys.length << 1));
                             }
+                            int i = pendingKeys;
+                            for (SelectionKey key : selectedKeys) {
+                                keys[i ++] = key;
+                            }
+                            selectedKeys.clear();
                         }
-                    } catch (CancelledKeyException ignored) {
-                        selectorLog.tracef("Skipping selection of cancelled key %s", key);
-                    } catch (Throwable t) {
-                        selectorLog.tracef(t, "Unexpected failure of selection of key %s", key);
+                    }
+                    while (processed < keyCount && processed < keyBudget) {
+                        final SelectionKey key = keys[processed];
+                        keys[processed] = null;
+                        handleSelected(key);
+                        processed ++;
+                    }
+                    pendingKeys = keyCount - processed;
+                    if (pendingKeys > 0) {
+                        System.arraycopy(keys, processed, keys, 0, pendingKeys);
+                        Arrays.fill(keys, pendingKeys, keyCount, null);
+                        keyBudgetExhaustedCountUpdater.lazySet(this, keyBudgetExhaustedCount + 1L);
                     }
                 }
+                handlerTimeUpdater.lazySet(this, handlerTime + (nanoTime() - phaseStart));
+                processedKeyCountUpdater.lazySet(this, processedKeyCount + processed);
+                selectCountUpdater.lazySet(this, selectCount + 1L);
                 // all selected keys invoked; loop back to run tasks
             }
         } finally {
             log.tracef("Shutting down channel thread \"%s\"", this);
+            releaseBufferArenas();
             safeClose(selector);
             getWorker().closeResource();
         }
     }
 
-    private static void safeRun(final Runnable command) {
+    /**
+     * Move timer keys scheduled by other threads into the wheel, and run those which have expired.
+     */
+    private void runTimers() {
+        final TimerWheel timerWheel = this.timerWheel;
+        TimeKey timeKey;
+        while ((timeKey = timerQueue.poll()) != null) {
+            if (timeKey.state == TimeKey.PENDING) {
+                timerWheel.add(timeKey, timeKey.expires);
+            } else {
+                timerWheel.remove(timeKey);
+            }
+        }
+        timerWheel.advance((nanoTime() - START_TIME) / TIMER_TICK);
+        while ((timeKey = (TimeKey) timerWheel.pollExpired()) != null) {
+            if (timeKeyStateUpdater.compareAndSet(timeKey, TimeKey.PENDING, TimeKey.FIRED)) {
+                safeRun(timeKey.command);
+            }
+        }
+    }
+
+    /**
+     * Poll the selector without blocking until it has ready keys, work is queued, shutdown is requested, or the busy
+     * poll window (or the given delay, if shorter) elapses.  During this time the select state remains
+     * {@code SELECT_RUNNING}, so other threads do not issue wakeups.
+     *
+     * @param delayTime the time until the next timer is due, in nanoseconds
+     * @return {@code true} if the poll ended because there is something to do (including a timer falling due), or
+     *     {@code false} if the busy poll window elapsed with nothing to do
+     * @throws IOException if the selector fails
+     */
+    private boolean busyPoll(final long delayTime) throws IOException {
+        final Selector selector = this.selector;
+        final long start = nanoTime();
+        final long window = Math.min(busyPollNanos, delayTime);
+        long now = start;
+        try {
+            while (now - start < window) {
+                if (selector.selectNow() > 0 || ! selectorWorkQueue.isEmpty() || ! timerQueue.isEmpty() || (state & SHUTDOWN) != 0) {
+                    return true;
+                }
+                if (spinWait) try {
+                    ON_SPIN_WAIT.invokeExact();
+                } catch (Throwable ignored) {
+                }
+                now = nanoTime();
+            }
+            return delayTime <= busyPollNanos;
+        } finally {
+            busyPollTimeUpdater.lazySet(this, busyPollTime + (nanoTime() - start));
+        }
+    }
+
+    private void handleSelected(final SelectionKey key) {
+        final int ops;
+        try {
+            ops = key.interestOps();
+            if (ops != 0) {
+                selectorLog.tracef("Selected key %s for %s", key, key.channel());
+                final NioHandle handle = (NioHandle) key.attachment();
+                if (handle == null) {
+                    cancelKey(key);
+                } else if (trackRunning) {
+                    runningSince = nanoTime();
+                    running = handle;
+                    try {
+                        handle.handleReady(key.readyOps());
+                    } finally {
+                        running = null;
+                    }
+                } else {
+                    handle.handleReady(key.readyOps());
+                }
+            }
+        } catch (CancelledKeyException ignored) {
+            selectorLog.tracef("Skipping selection of cancelled key %s", key);
+        } catch (Throwable t) {
+            selectorLog.tracef(t, "Unexpected failure of selection of key %s", key);
+        }
+    }
+
+    private void safeRun(final Runnable command) {
         if (command != null) try {
             log.tracef("Running task %s", command);
-            command.run();
+            if (trackRunning) {
+                runningSince = nanoTime();
+                running = command;
+                try {
+                    command.run();
+                } finally {
+                    running = null;
+                }
+            } else {
+                command.run();
+            }
         } catch (Throwable t) {
             log.taskFailed(command, t);
         }
@@ -567,14 +823,203 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
         if ((state & SHUTDOWN) != 0) {
             throw log.threadExiting();
         }
-        synchronized (workLock) {
-            selectorWorkQueue.add(command);
-        }
+        selectorWorkQueue.offer(command);
         if(currentThread() != this) {
+            wakeupSelector();
+        }
+    }
+
+    /**
+     * Wake up the selector if this thread is blocked in (or about to block in) select, and no other thread has
+     * already done so during the current select cycle.  Callers must make their change visible (e.g. by queueing
+     * a task or updating interest ops) <em>before</em> calling this method.
+     */
+    void wakeupSelector() {
+        if (selectState == SELECT_BLOCKING && selectStateUpdater.compareAndSet(this, SELECT_BLOCKING, SELECT_WOKEN)) {
+            // counted by this thread once the select returns
             selector.wakeup();
+        } else {
+            suppressedWakeupCounts.getAndIncrement(((int) Thread.currentThread().getId() & WAKEUP_COUNT_CELLS - 1) * WAKEUP_COUNT_STRIDE);
+        }
+    }
+
+    long getWakeupCount() {
+        return wakeupCount;
+    }
+
+    long getSuppressedWakeupCount() {
+        long count = 0L;
+        for (int i = 0; i < WAKEUP_COUNT_CELLS; i++) {
+            count += suppressedWakeupCounts.get(i * WAKEUP_COUNT_STRIDE);
+        }
+        return count;
+    }
+
+    long getBusyPollTime() {
+        return busyPollTime;
+    }
+
+    long getBlockedSelectTime() {
+        return blockedSelectTime;
+    }
+
+    long getTaskTime() {
+        return taskTime;
+    }
+
+    long getHandlerTime() {
+        return handlerTime;
+    }
+
+    long getSelectCount() {
+        return selectCount;
+    }
+
+    long getProcessedKeyCount() {
+        return processedKeyCount;
+    }
+
+    int getTaskQueueSize() {
+        return selectorWorkQueue.size();
+    }
+
+    int getDelayedTaskCount() {
+        // an estimate: the timer queue holds both new keys from other threads and keys they have removed
+        return delayedTaskCount + timerQueue.size();
+    }
+
+    int getRegisteredKeyCount() {
+        return selector.keys().size();
+    }
+
+    long getEventLoopLag() {
+        return eventLoopLag;
+    }
+
+    long getMaxEventLoopLag() {
+        return maxEventLoopLag;
+    }
+
+    /**
+     * Have the lag probe check the load of this thread for an accept handle each time it runs.  The handle is
+     * dropped once its server is closed.
+     *
+     * @param handle the accept handle
+     */
+    static long getLoadSampleInterval() {
+        return LOAD_SAMPLE_INTERVAL;
+    }
+
+    static boolean isLagProbeEnabled() {
+        return LAG_PROBE_INTERVAL > 0L;
+    }
+
+    void addThrottledHandle(final NioTcpServerHandle handle) {
+        assert currentThread() == this;
+        final NioTcpServerHandle[] oldHandles = throttledHandles;
+        final NioTcpServerHandle[] newHandles = Arrays.copyOf(oldHandles, oldHandles.length + 1);
+        newHandles[oldHandles.length] = handle;
+        throttledHandles = newHandles;
+    }
+
+    private void checkThrottledHandles() {
+        final NioTcpServerHandle[] handles = throttledHandles;
+        int kept = 0;
+        for (NioTcpServerHandle handle : handles) {
+            if (handle.checkLoad()) {
+                handles[kept ++] = handle;
+            }
+        }
+        if (kept < handles.length) {
+            throttledHandles = Arrays.copyOf(handles, kept);
+        }
+    }
+
+    /**
+     * Start counting the bytes moved by this thread's channels, and sampling them into the recent load.  Counting is
+     * off unless a thread selection or balancing strategy uses it, so that transfers cost nothing extra and the sampler
+     * does not wake an idle thread.
+     */
+    void enableLoadSampling() {
+        if (! loadSampling) {
+            loadSampling = true;
+            try {
+                execute(new Runnable() {
+                    public void run() {
+                        armLoadSampler();
+                    }
+                });
+            } catch (RejectedExecutionException ignored) {
+                // the thread is exiting
+            }
+        }
+    }
+
+    private void armLoadSampler() {
+        if (loadSampler == null) {
+            loadSampler = new LoadSampler();
+            loadSampler.arm();
+            internalTimers ++;
+        }
+    }
+
+    void addBytesTransferred(final long bytes) {
+        if (loadSampling) {
+            if (currentThread() == this) {
+                bytesTransferredUpdater.lazySet(this, bytesTransferred + bytes);
+            } else {
+                bytesTransferredUpdater.getAndAdd(this, bytes);
+            }
+        }
+    }
+
+    long getBytesTransferred() {
+        return bytesTransferred;
+    }
+
+    long getRecentBytesTransferred() {
+        return recentBytesTransferred;
+    }
+
+    long getTaskBudgetExhaustedCount() {
+        return taskBudgetExhaustedCount;
+    }
+
+    long getKeyBudgetExhaustedCount() {
+        return keyBudgetExhaustedCount;
+    }
+
+    void connectionMigrated() {
+        assert currentThread() == this;
+        migratedConnectionCountUpdater.lazySet(this, migratedConnectionCount + 1L);
+    }
+
+    long getMigratedConnectionCount() {
+        return migratedConnectionCount;
+    }
+
+    /**
+     * Get a snapshot of the keys registered with this thread's selector.
+     *
+     * @return the registered keys
+     */
+    SelectionKey[] getRegisteredKeys() {
+        synchronized (selector) {
+            final Set<SelectionKey> keySet = selector.keys();
+            synchronized (keySet) {
+                return keySet.toArray(new SelectionKey[keySet.size()]);
+            }
         }
     }
 
+    Object getRunning() {
+        return running;
+    }
+
+    long getRunningSince() {
+        return runningSince;
+    }
+
     void shutdown() {
         int oldState;
         do {
@@ -599,18 +1044,18 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
             return Key.IMMEDIATE;
         }
         final long deadline = (nanoTime() - START_TIME) + Math.min(millis, LONGEST_DELAY) * 1000000L;
-        final TimeKey key = new TimeKey(deadline, command);
-        synchronized (workLock) {
-            final TreeSet<TimeKey> queue = delayWorkQueue;
-            queue.add(key);
-            if (queue.iterator().next() == key) {
-                // we're the next one up; poke the selector to update its delay time
-                if(currentThread() != this) {
-                    selector.wakeup();
-                }
+        // round up so that the task never runs early
+        final TimeKey key = new TimeKey((deadline + TIMER_TICK - 1L) / TIMER_TICK, command);
+        if (currentThread() == this) {
+            timerWheel.add(key, key.expires);
+        } else {
+            timerQueue.offer(key);
+            if (key.expires * TIMER_TICK < plannedWakeup) {
+                // we're earlier than the selector expects; poke it to update its delay time
+                wakeupSelector();
             }
-            return key;
         }
+        return key;
     }
 
     class RepeatKey implements Key, Runnable {
@@ -665,14 +1110,14 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
             try {
                 return channel.register(selector, 0);
             } finally {
-                selector.wakeup();
+                wakeupSelector();
             }
         } else {
             final SynchTask task = new SynchTask();
             queueTask(task);
             try {
                 // Prevent selector from sleeping until we're done!
-                selector.wakeup();
+                wakeupSelector();
                 return channel.register(selector, 0);
             } finally {
                 task.done();
@@ -681,9 +1126,7 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
     }
 
     void queueTask(final Runnable task) {
-        synchronized (workLock) {
-            selectorWorkQueue.add(task);
-        }
+        selectorWorkQueue.offer(task);
     }
 
     void cancelKey(final SelectionKey key) {
@@ -707,7 +1150,7 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
             queueTask(task);
             try {
                 // Prevent selector from sleeping until we're done!
-                selector.wakeup();
+                wakeupSelector();
                 key.cancel();
             } catch (Throwable t) {
                 log.logf(FQCN, Logger.Level.TRACE, t, "Error cancelling key %s of %s (same thread, old locking)", key, channel);
@@ -718,7 +1161,7 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
             log.logf(FQCN, Logger.Level.TRACE, null, "Cancelling key %s of %s (other thread)", key, channel);
             try {
                 key.cancel();
-                selector.wakeup();
+                wakeupSelector();
             } catch (Throwable t) {
                 log.logf(FQCN, Logger.Level.TRACE, t, "Error cancelling key %s of %s (other thread)", key, channel);
             }
@@ -735,7 +1178,7 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
             queueTask(task);
             try {
                 // Prevent selector from sleeping until we're done!
-                selector.wakeup();
+                wakeupSelector();
                 key.interestOps(key.interestOps() | ops);
             } catch (CancelledKeyException ignored) {
             } finally {
@@ -744,7 +1187,7 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
         } else {
             try {
                 key.interestOps(key.interestOps() | ops);
-                selector.wakeup();
+                wakeupSelector();
             } catch (CancelledKeyException ignored) {
             }
         }
@@ -760,7 +1203,7 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
             queueTask(task);
             try {
                 // Prevent selector from sleeping until we're done!
-                selector.wakeup();
+                wakeupSelector();
                 key.interestOps(key.interestOps() & ~ops);
             } catch (CancelledKeyException ignored) {
             } finally {
@@ -781,28 +1224,83 @@ final class WorkerThread extends XnioIoThread implements XnioExecutor {
         return identityHashCode(this);
     }
 
-    static final AtomicLong seqGen = new AtomicLong();
+    final class TimeKey extends TimerWheel.Entry implements XnioExecutor.Key {
+        static final int PENDING = 0;
+        static final int FIRED = 1;
+        static final int REMOVED = 2;
 
-    final class TimeKey implements XnioExecutor.Key, Comparable<TimeKey> {
-        private final long deadline;
-        private final long seq = seqGen.incrementAndGet();
         private final Runnable command;
 
-        TimeKey(final long deadline, final Runnable command) {
-            this.deadline = deadline;
+        volatile int state;
+
+        TimeKey(final long expires, final Runnable command) {
+            this.expires = expires;
             this.command = command;
         }
 
         public boolean remove() {
-            synchronized (workLock) {
-                return delayWorkQueue.remove(this);
+            if (! timeKeyStateUpdater.compareAndSet(this, PENDING, REMOVED)) {
+                return false;
+            }
+            if (currentThread() == WorkerThread.this) {
+                timerWheel.remove(this);
+            } else {
+                // hand it back so that the wheel does not hold it until it expires; no wakeup is needed
+                timerQueue.offer(this);
             }
+            return true;
+        }
+
+        boolean isCancelled() {
+            return state != PENDING;
+        }
+    }
+
+    /**
+     * A timer which measures how late this thread runs it.  It re-arms its own key each time it runs, so that it costs
+     * no allocation after the first.
+     */
+    final class LagProbe implements Runnable {
+        private final TimeKey key = new TimeKey(0L, this);
+        private long deadline;
+
+        void arm() {
+            deadline = (nanoTime() - START_TIME) + LAG_PROBE_INTERVAL;
+            key.state = TimeKey.PENDING;
+            timerWheel.add(key, (deadline + TIMER_TICK - 1L) / TIMER_TICK);
         }
 
-        public int compareTo(final TimeKey o) {
-            int r = Long.signum(deadline - o.deadline);
-            if (r == 0) r = Long.signum(seq - o.seq);
-            return r;
+        public void run() {
+            final long lag = Math.max(0L, (nanoTime() - START_TIME) - deadline);
+            eventLoopLag = lag;
+            if (lag > maxEventLoopLag) {
+                maxEventLoopLag = lag;
+            }
+            if (throttledHandles.length > 0) {
+                checkThrottledHandles();
+            }
+            arm();
+        }
+    }
+
+    /**
+     * A timer which folds the bytes transferred since it last ran into a decaying average, which the worker uses to
+     * choose the least busy thread.  Like the lag probe, it re-arms its own key.
+     */
+    final class LoadSampler implements Runnable {
+        private final TimeKey key = new TimeKey(0L, this);
+        private long lastTotal;
+
+        void arm() {
+            key.state = TimeKey.PENDING;
+            timerWheel.add(key, ((nanoTime() - START_TIME) + LOAD_SAMPLE_INTERVAL + TIMER_TICK - 1L) / TIMER_TICK);
+        }
+
+        public void run() {
+            final long total = bytesTransferred;
+            recentBytesTransferred = (recentBytesTransferred + (total - lastTotal)) >>> 1;
+            lastTotal = total;
+            arm();
         }
     }
 
@@ -0,0 +1,171 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.xnio.nio.AcceptTestSupport.acceptOne;
+import static org.xnio.nio.AcceptTestSupport.createServer;
+import static org.xnio.nio.AcceptTestSupport.xnio;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+
+/**
+ * Test for accepting several connections per accept readiness event.
+ */
+public final class AcceptBatchTestCase {
+
+    private static long batchesOfAtLeastTwo(final long[] histogram) {
+        long count = 0L;
+        for (int i = 2; i < histogram.length; i++) {
+            count += histogram[i];
+        }
+        return count;
+    }
+
+    private static long[] awaitHistogram(final NioTcpServer server, final long accepts) throws InterruptedException {
+        // the batch is recorded once the listener returns for the last time
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        for (;;) {
+            final long[] histogram = server.getAcceptsPerWakeupHistogram();
+            long total = 0L;
+            for (int i = 1; i < histogram.length; i++) {
+                total += histogram[i] << (i - 1);
+            }
+            if (total >= accepts || System.nanoTime() - deadline > 0L) {
+                return histogram;
+            }
+            Thread.sleep(1L);
+        }
+    }
+
+    private static void connectAndAccept(final NioTcpServer server, final Socket[] clients, final BlockingQueue<StreamConnection> accepted) throws Exception {
+        final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+        // queue every connection in the backlog before accepts are resumed
+        for (int i = 0; i < clients.length; i ++) {
+            clients[i] = new Socket(address.getAddress(), address.getPort());
+        }
+        server.resumeAccepts();
+        for (int i = 0; i < clients.length; i ++) {
+            assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testBatchAcceptsPendingConnections() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final NioTcpServer server = createServer(worker, OptionMap.create(Options.ACCEPT_BATCH_SIZE, 8), acceptOne(accepted));
+        final Socket[] clients = new Socket[8];
+        try {
+            assertEquals(Integer.valueOf(8), server.getOption(Options.ACCEPT_BATCH_SIZE));
+            connectAndAccept(server, clients, accepted);
+            assertTrue(batchesOfAtLeastTwo(awaitHistogram(server, clients.length)) > 0L);
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDefaultAcceptsOncePerWakeup() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final NioTcpServer server = createServer(worker, OptionMap.EMPTY, acceptOne(accepted));
+        final Socket[] clients = new Socket[4];
+        try {
+            assertEquals(Integer.valueOf(1), server.getOption(Options.ACCEPT_BATCH_SIZE));
+            connectAndAccept(server, clients, accepted);
+            final long[] histogram = awaitHistogram(server, clients.length);
+            assertEquals(0L, batchesOfAtLeastTwo(histogram));
+            assertEquals(clients.length, histogram[1]);
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBatchHonorsHighWater() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final NioTcpServer server = createServer(worker, OptionMap.create(Options.ACCEPT_BATCH_SIZE, 16, Options.CONNECTION_HIGH_WATER, 3), acceptOne(accepted));
+        final Socket[] clients = new Socket[5];
+        try {
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = new Socket(address.getAddress(), address.getPort());
+            }
+            server.resumeAccepts();
+            for (int i = 0; i < 3; i ++) {
+                assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+            }
+            assertNull(accepted.poll(200L, TimeUnit.MILLISECONDS));
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInvalidBatchSizeRejected() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        try {
+            final NioTcpServer server = createServer(worker, OptionMap.EMPTY, acceptOne(new LinkedBlockingQueue<StreamConnection>()));
+            try {
+                server.setOption(Options.ACCEPT_BATCH_SIZE, Integer.valueOf(0));
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            } finally {
+                IoUtils.safeClose(server);
+            }
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.xnio.nio.AcceptTestSupport.acceptAll;
+import static org.xnio.nio.AcceptTestSupport.createServer;
+import static org.xnio.nio.AcceptTestSupport.xnio;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.channels.AcceptingChannel;
+
+/**
+ * Test for TCP servers with one listening socket per I/O thread.
+ */
+public final class AcceptShardingTestCase {
+
+    @Test
+    public void testConnectionsSpreadAcrossShards() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 4));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = createServer(worker, OptionMap.create(Options.ACCEPT_SHARDING, true), acceptAll(accepted));
+        final Socket[] clients = new Socket[40];
+        try {
+            server.resumeAccepts();
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = new Socket(address.getAddress(), address.getPort());
+            }
+            final Set<Thread> threads = new HashSet<Thread>();
+            for (int i = 0; i < clients.length; i ++) {
+                final StreamConnection connection = accepted.poll(5L, TimeUnit.SECONDS);
+                assertNotNull(connection);
+                threads.add(connection.getIoThread());
+            }
+            if (NioXnioWorker.REUSE_PORT != null) {
+                // the system hashes each connection to one of four sockets
+                assertTrue(threads.size() > 1);
+            }
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSuspendAndHighWaterApplyToAllShards() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = createServer(worker, OptionMap.create(Options.ACCEPT_SHARDING, true, Options.CONNECTION_HIGH_WATER, 100), acceptAll(accepted));
+        final Socket[] clients = new Socket[8];
+        try {
+            assertEquals(Integer.valueOf(100), server.getOption(Options.CONNECTION_HIGH_WATER));
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            // the listening sockets queue these until accepts are resumed
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = new Socket(address.getAddress(), address.getPort());
+            }
+            assertNull(accepted.poll(200L, TimeUnit.MILLISECONDS));
+            server.resumeAccepts();
+            for (int i = 0; i < clients.length; i ++) {
+                assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+            }
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBalancingTokensAreRejected() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        try {
+            final AcceptingChannel<StreamConnection> server = createServer(worker, OptionMap.create(Options.ACCEPT_SHARDING, true, Options.BALANCING_TOKENS, 1), acceptAll(new LinkedBlockingQueue<StreamConnection>()));
+            if (NioXnioWorker.REUSE_PORT != null) {
+                IoUtils.safeClose(server);
+                fail("Expected IllegalArgumentException");
+            }
+            IoUtils.safeClose(server);
+        } catch (IllegalArgumentException expected) {
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.StreamConnection;
+import org.xnio.Xnio;
+import org.xnio.channels.AcceptingChannel;
+
+/**
+ * Servers and accept listeners shared by the tests of the TCP accept path.
+ */
+final class AcceptTestSupport {
+
+    static final Xnio xnio = Xnio.getInstance("nio", AcceptTestSupport.class.getClassLoader());
+
+    private AcceptTestSupport() {
+    }
+
+    /**
+     * Create a server on an ephemeral loopback port.  Its accepts are not resumed.
+     *
+     * @param worker the worker to create the server on
+     * @param optionMap the server options
+     * @param acceptListener the accept listener
+     * @return the server
+     * @throws IOException if the server could not be created
+     */
+    static NioTcpServer createServer(final NioXnioWorker worker, final OptionMap optionMap, final ChannelListener<? super AcceptingChannel<StreamConnection>> acceptListener) throws IOException {
+        return (NioTcpServer) worker.createStreamConnectionServer(new InetSocketAddress(Inet4Address.getByAddress(new byte[] { 127, 0, 0, 1 }), 0), acceptListener, optionMap);
+    }
+
+    /**
+     * Create a server on an ephemeral loopback port, and resume its accepts.
+     *
+     * @param worker the worker to create the server on
+     * @param optionMap the server options
+     * @param acceptListener the accept listener
+     * @return the server
+     * @throws IOException if the server could not be created
+     */
+    static NioTcpServer startServer(final NioXnioWorker worker, final OptionMap optionMap, final ChannelListener<? super AcceptingChannel<StreamConnection>> acceptListener) throws IOException {
+        final NioTcpServer server = createServer(worker, optionMap, acceptListener);
+        server.resumeAccepts();
+        return server;
+    }
+
+    /**
+     * Get a listener which accepts every pending connection each time it is called, and queues them.
+     *
+     * @param accepted the queue for the accepted connections
+     * @return the listener
+     */
+    static ChannelListener<AcceptingChannel<StreamConnection>> acceptAll(final BlockingQueue<StreamConnection> accepted) {
+        return new ChannelListener<AcceptingChannel<StreamConnection>>() {
+            public void handleEvent(final AcceptingChannel<StreamConnection> channel) {
+                try {
+                    StreamConnection connection;
+                    while ((connection = channel.accept()) != null) {
+                        accepted.add(connection);
+                    }
+                } catch (Exception e) {
+                    IoUtils.safeClose(channel);
+                }
+            }
+        };
+    }
+
+    /**
+     * Get a listener which, like most listeners, accepts a single connection each time it is called, and queues it.
+     *
+     * @param accepted the queue for the accepted connections
+     * @return the listener
+     */
+    static ChannelListener<AcceptingChannel<StreamConnection>> acceptOne(final BlockingQueue<StreamConnection> accepted) {
+        return new ChannelListener<AcceptingChannel<StreamConnection>>() {
+            public void handleEvent(final AcceptingChannel<StreamConnection> channel) {
+                try {
+                    final StreamConnection connection = channel.accept();
+                    if (connection != null) {
+                        accepted.add(connection);
+                    }
+                } catch (Exception e) {
+                    IoUtils.safeClose(channel);
+                }
+            }
+        };
+    }
+}
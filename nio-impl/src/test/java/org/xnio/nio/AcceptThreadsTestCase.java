@@ -0,0 +1,189 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.xnio.nio.AcceptTestSupport.acceptAll;
+import static org.xnio.nio.AcceptTestSupport.xnio;
+
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.channels.AcceptingChannel;
+
+/**
+ * Test for TCP servers whose connections are accepted on dedicated accept threads.
+ */
+public final class AcceptThreadsTestCase {
+
+    private static AcceptingChannel<StreamConnection> createServer(final NioXnioWorker worker, final OptionMap optionMap, final BlockingQueue<StreamConnection> accepted, final BlockingQueue<Thread> listenerThreads) throws Exception {
+        final ChannelListener<AcceptingChannel<StreamConnection>> acceptAll = acceptAll(accepted);
+        return AcceptTestSupport.createServer(worker, optionMap, new ChannelListener<AcceptingChannel<StreamConnection>>() {
+            public void handleEvent(final AcceptingChannel<StreamConnection> channel) {
+                listenerThreads.add(Thread.currentThread());
+                acceptAll.handleEvent(channel);
+            }
+        });
+    }
+
+    @Test
+    public void testConnectionsAreHandedOffToIoThreads() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2, Options.WORKER_ACCEPT_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final BlockingQueue<Thread> listenerThreads = new LinkedBlockingQueue<Thread>();
+        final AcceptingChannel<StreamConnection> server = createServer(worker, OptionMap.EMPTY, accepted, listenerThreads);
+        final Socket[] clients = new Socket[10];
+        try {
+            assertEquals(1, worker.getAcceptThreads().length);
+            server.resumeAccepts();
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = new Socket(address.getAddress(), address.getPort());
+            }
+            for (int i = 0; i < clients.length; i ++) {
+                final StreamConnection connection = accepted.poll(5L, TimeUnit.SECONDS);
+                assertNotNull(connection);
+                assertTrue(Arrays.asList(worker.getAll()).contains(connection.getIoThread()));
+                final ByteBuffer buffer = ByteBuffer.wrap(new byte[] { (byte) i });
+                while (buffer.hasRemaining()) {
+                    connection.getSinkChannel().write(buffer);
+                }
+            }
+            // the accept listener only ever runs on the I/O threads
+            for (Thread thread : listenerThreads) {
+                assertTrue(Arrays.asList(worker.getAll()).contains(thread));
+            }
+            for (Socket client : clients) {
+                client.setSoTimeout(5000);
+                assertTrue(client.getInputStream().read() >= 0);
+            }
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHighWaterStopsAcceptThreads() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2, Options.WORKER_ACCEPT_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = createServer(worker, OptionMap.create(Options.CONNECTION_HIGH_WATER, 2, Options.CONNECTION_LOW_WATER, 2), accepted, new LinkedBlockingQueue<Thread>());
+        final Socket[] clients = new Socket[3];
+        final StreamConnection[] connections = new StreamConnection[3];
+        try {
+            server.resumeAccepts();
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = new Socket(address.getAddress(), address.getPort());
+            }
+            connections[0] = accepted.poll(5L, TimeUnit.SECONDS);
+            connections[1] = accepted.poll(5L, TimeUnit.SECONDS);
+            assertNotNull(connections[0]);
+            assertNotNull(connections[1]);
+            assertNull(accepted.poll(200L, TimeUnit.MILLISECONDS));
+            // dropping below the low water lets the accept thread continue
+            connections[0].close();
+            connections[2] = accepted.poll(5L, TimeUnit.SECONDS);
+            assertNotNull(connections[2]);
+            assertSame(worker, connections[2].getWorker());
+        } finally {
+            IoUtils.safeClose(clients);
+            IoUtils.safeClose(connections);
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAcceptThreadsNumberedAfterIoThreads() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2, Options.WORKER_ACCEPT_THREADS, 2));
+        try {
+            final WorkerThread[] acceptThreads = worker.getAcceptThreads();
+            for (int i = 0; i < acceptThreads.length; i ++) {
+                assertEquals(worker.getAll().length + i, acceptThreads[i].getNumber());
+                assertFalse(worker.isIoThread(acceptThreads[i]));
+            }
+            for (WorkerThread thread : worker.getAll()) {
+                assertTrue(worker.isIoThread(thread));
+            }
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConnectionNotAcceptedIsClosed() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2, Options.WORKER_ACCEPT_THREADS, 1));
+        final BlockingQueue<Thread> listenerThreads = new LinkedBlockingQueue<Thread>();
+        final AcceptingChannel<StreamConnection> server = worker.createStreamConnectionServer(new InetSocketAddress(Inet4Address.getByAddress(new byte[] { 127, 0, 0, 1 }), 0), new ChannelListener<AcceptingChannel<StreamConnection>>() {
+            public void handleEvent(final AcceptingChannel<StreamConnection> channel) {
+                // never calls accept()
+                listenerThreads.add(Thread.currentThread());
+            }
+        }, OptionMap.EMPTY);
+        Socket client = null;
+        try {
+            server.resumeAccepts();
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            client = new Socket(address.getAddress(), address.getPort());
+            assertNotNull(listenerThreads.poll(5L, TimeUnit.SECONDS));
+            client.setSoTimeout(5000);
+            assertEquals(-1, client.getInputStream().read());
+        } finally {
+            IoUtils.safeClose(client);
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testNegativeAcceptThreadsRejected() throws Exception {
+        try {
+            xnio.createWorker(OptionMap.create(Options.WORKER_ACCEPT_THREADS, -1));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.xnio.nio.AcceptTestSupport.acceptAll;
+import static org.xnio.nio.AcceptTestSupport.startServer;
+import static org.xnio.nio.AcceptTestSupport.xnio;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+
+/**
+ * Test for throttling accepts by I/O thread load and by peer address.
+ */
+public final class AcceptThrottleTestCase {
+
+    private static Socket connect(final NioTcpServer server) throws Exception {
+        final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+        final Socket socket = new Socket(address.getAddress(), address.getPort());
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+    @Test
+    public void testLagThrottlesAccepts() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final NioTcpServer server = startServer(worker, OptionMap.create(Options.ACCEPT_THROTTLE_LAG, 50), acceptAll(accepted));
+        Socket client = null;
+        try {
+            assertEquals(Integer.valueOf(50), server.getOption(Options.ACCEPT_THROTTLE_LAG));
+            // stall the I/O thread for longer than the lag probe interval, so the probe runs late
+            worker.getAll()[0].execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(1300L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (server.getThrottleCount() == 0L) {
+                if (System.nanoTime() - deadline > 0L) {
+                    fail("Accepts were not throttled");
+                }
+                Thread.sleep(10L);
+            }
+            // once the thread recovers, accepts resume
+            client = connect(server);
+            assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+        } finally {
+            IoUtils.safeClose(client);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAcceptThreadThrottlesOnIoThreadLag() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2, Options.WORKER_ACCEPT_THREADS, 1));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final NioTcpServer server = startServer(worker, OptionMap.create(Options.ACCEPT_THROTTLE_LAG, 50), acceptAll(accepted));
+        Socket client = null;
+        try {
+            // the accept thread itself stays idle; only one of the I/O threads is stalled
+            worker.getAll()[1].execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(1300L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (server.getThrottleCount() == 0L) {
+                if (System.nanoTime() - deadline > 0L) {
+                    fail("Accepts were not throttled");
+                }
+                Thread.sleep(10L);
+            }
+            client = connect(server);
+            assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+        } finally {
+            IoUtils.safeClose(client);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLimitPerAddress() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final NioTcpServer server = startServer(worker, OptionMap.create(Options.CONNECTION_LIMIT_PER_ADDRESS, 2), acceptAll(accepted));
+        final Socket[] clients = new Socket[4];
+        try {
+            clients[0] = connect(server);
+            clients[1] = connect(server);
+            final StreamConnection first = accepted.poll(5L, TimeUnit.SECONDS);
+            assertNotNull(first);
+            assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+            // a third connection from the same address is closed straight away
+            clients[2] = connect(server);
+            assertEquals(-1, clients[2].getInputStream().read());
+            assertNull(accepted.poll(100L, TimeUnit.MILLISECONDS));
+            assertEquals(1L, server.getRejectedConnectionCount());
+            // closing one makes room for another
+            first.close();
+            clients[3] = connect(server);
+            assertNotNull(accepted.poll(5L, TimeUnit.SECONDS));
+            assertEquals(1L, server.getRejectedConnectionCount());
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAddressCountIsRetiredAtZero() throws Exception {
+        final ConcurrentMap<InetAddress, NioTcpServer.AddressCount> map = new ConcurrentHashMap<InetAddress, NioTcpServer.AddressCount>();
+        final InetAddress address = Inet4Address.getByAddress(new byte[] { 10, 0, 0, 1 });
+        final NioTcpServer.AddressCount count = NioTcpServer.AddressCount.acquire(map, address, 1);
+        assertNotNull(count);
+        assertNull(NioTcpServer.AddressCount.acquire(map, address, 1));
+        count.release();
+        assertTrue(map.isEmpty());
+        assertEquals(-1, count.get());
+        assertNotNull(NioTcpServer.AddressCount.acquire(map, address, 1));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.xnio.nio.AcceptTestSupport.acceptOne;
+import static org.xnio.nio.AcceptTestSupport.startServer;
+import static org.xnio.nio.AcceptTestSupport.xnio;
+
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.IoThreadSelection;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.channels.AcceptingChannel;
+
+/**
+ * Test for passing balancing tokens to the least loaded I/O thread.
+ */
+public final class AdaptiveTokenBalancingTestCase {
+
+    private static final int LOADED_CONNECTIONS = 20;
+    private static final int SERVER_CONNECTIONS = 12;
+
+    /**
+     * Load the second of three I/O threads with outbound connections, then count how many new server connections it
+     * is given anyway.
+     */
+    private static int connectionsOnLoadedThread(final OptionMap serverOptions) throws Exception {
+        final NioXnioWorker peerWorker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 3));
+        final BlockingQueue<StreamConnection> peerAccepted = new LinkedBlockingQueue<StreamConnection>();
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> peerServer = startServer(peerWorker, OptionMap.EMPTY, acceptOne(peerAccepted));
+        final StreamConnection[] loaded = new StreamConnection[LOADED_CONNECTIONS];
+        final Socket[] clients = new Socket[SERVER_CONNECTIONS];
+        AcceptingChannel<StreamConnection> server = null;
+        try {
+            final WorkerThread loadedThread = worker.getAll()[1];
+            for (int i = 0; i < loaded.length; i ++) {
+                loaded[i] = loadedThread.openStreamConnection(peerServer.getLocalAddress(), null, OptionMap.EMPTY).get();
+            }
+            server = startServer(worker, serverOptions, acceptOne(accepted));
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            int count = 0;
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = new Socket(address.getAddress(), address.getPort());
+                final StreamConnection connection = accepted.poll(5L, TimeUnit.SECONDS);
+                assertNotNull(connection);
+                if (connection.getIoThread() == loadedThread) {
+                    count ++;
+                }
+            }
+            return count;
+        } finally {
+            IoUtils.safeClose(clients);
+            IoUtils.safeClose(loaded);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            for (StreamConnection connection : peerAccepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server, peerServer);
+            worker.shutdown();
+            peerWorker.shutdown();
+            assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+            assertTrue(peerWorker.awaitTermination(5L, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testRoundRobinIgnoresLoad() throws Exception {
+        // the token visits every thread in turn, so the loaded thread takes a share of about a third
+        assertTrue(connectionsOnLoadedThread(OptionMap.create(Options.BALANCING_TOKENS, 1, Options.BALANCING_CONNECTIONS, 2)) > 0);
+    }
+
+    @Test
+    public void testLeastKeysAvoidsLoadedThread() throws Exception {
+        assertEquals(0, connectionsOnLoadedThread(OptionMap.builder()
+                .set(Options.BALANCING_TOKENS, 1)
+                .set(Options.BALANCING_CONNECTIONS, 2)
+                .set(Options.BALANCING_TOKEN_SELECTION, IoThreadSelection.LEAST_KEYS)
+                .getMap()));
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Pooled;
+import org.xnio.Xnio;
+import org.xnio.XnioIoThread;
+
+/**
+ * Test for buffer pool arenas owned by I/O threads.
+ */
+public final class BufferArenaTestCase {
+
+    private static final Xnio xnio = Xnio.getInstance("nio", BufferArenaTestCase.class.getClassLoader());
+
+    private static <T> T runOn(final XnioIoThread thread, final Callable<T> callable) throws Exception {
+        final FutureTask<T> task = new FutureTask<T>(callable);
+        thread.execute(task);
+        return task.get(5L, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testCrossThreadFreeReturnsToOwner() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final AtomicInteger regions = new AtomicInteger();
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(new BufferAllocator<ByteBuffer>() {
+            public ByteBuffer allocate(final int size) {
+                regions.incrementAndGet();
+                return ByteBuffer.allocate(size);
+            }
+        }, 64, 64 * 4, 4, true);
+        try {
+            final XnioIoThread owner = worker.getAll()[0];
+            final Pooled<ByteBuffer> pooled = runOn(owner, new Callable<Pooled<ByteBuffer>>() {
+                public Pooled<ByteBuffer> call() {
+                    final Pooled<ByteBuffer> pooled = pool.allocate();
+                    pooled.getResource().put(0, (byte) 42);
+                    return pooled;
+                }
+            });
+            // freed on another thread, the buffer goes back to the owner rather than to the shared stacks
+            pooled.free();
+            assertEquals(Byte.valueOf((byte) 42), runOn(owner, new Callable<Byte>() {
+                public Byte call() {
+                    final Pooled<ByteBuffer> pooled = pool.allocate();
+                    try {
+                        return Byte.valueOf(pooled.getResource().get(0));
+                    } finally {
+                        pooled.free();
+                    }
+                }
+            }));
+            // another I/O thread draws the rest of the region from the shared stacks
+            runOn(worker.getAll()[1], new Callable<Void>() {
+                public Void call() {
+                    final Pooled<?>[] pooled = new Pooled<?>[3];
+                    for (int i = 0; i < pooled.length; i ++) {
+                        pooled[i] = pool.allocate();
+                    }
+                    for (Pooled<?> p : pooled) {
+                        p.free();
+                    }
+                    return null;
+                }
+            });
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+        // the exiting threads gave their cached buffers back, so the first region still serves four buffers
+        final Pooled<?>[] pooled = new Pooled<?>[4];
+        for (int i = 0; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+        }
+        assertEquals(1, regions.get());
+        for (Pooled<?> p : pooled) {
+            p.free();
+        }
+    }
+}
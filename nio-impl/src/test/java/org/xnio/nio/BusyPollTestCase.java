@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioExecutor;
+
+/**
+ * Test for the busy-poll mode of {@link WorkerThread}.
+ */
+public final class BusyPollTestCase {
+
+    @Test
+    public void testTasksAndTimersWhileBusyPolling() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", BusyPollTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1, Options.WORKER_IO_BUSY_POLL, 5000));
+        try {
+            final WorkerThread thread = worker.getAll()[0];
+            final CountDownLatch latch = new CountDownLatch(2);
+            final long start = System.nanoTime();
+            thread.executeAfter(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            }, 30L, TimeUnit.MILLISECONDS);
+            final XnioExecutor.Key cancelled = thread.executeAfter(new Runnable() {
+                public void run() {
+                    throw new IllegalStateException("Cancelled task ran");
+                }
+            }, 10L, TimeUnit.MILLISECONDS);
+            assertTrue(cancelled.remove());
+            Thread.sleep(5L);
+            thread.execute(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(5L, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30L));
+            assertTrue(thread.getBusyPollTime() > 0L);
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", BusyPollTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        try {
+            final WorkerThread thread = worker.getAll()[0];
+            final CountDownLatch latch = new CountDownLatch(1);
+            thread.executeAfter(new Runnable() {
+                public void run() {
+                    latch.countDown();
+                }
+            }, 20L, TimeUnit.MILLISECONDS);
+            assertTrue(latch.await(5L, TimeUnit.SECONDS));
+            assertEquals(0L, thread.getBusyPollTime());
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.Pooled;
+
+/**
+ * Contention benchmark for {@link ByteBufferSlicePool}: each operation allocates and then frees a batch of buffers
+ * larger than the thread-local cache, so that most of them pass through the shared free stacks.  Run with
+ * {@code java -cp <test classpath> org.openjdk.jmh.Main ByteBufferSlicePoolBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ByteBufferSlicePoolBenchmark {
+
+    private static final int BATCH = 32;
+
+    @State(Scope.Benchmark)
+    public static class SharedPool {
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR, 4096, 4096 * 64);
+    }
+
+    @State(Scope.Thread)
+    public static class Batch {
+        @SuppressWarnings("unchecked")
+        final Pooled<ByteBuffer>[] buffers = new Pooled[BATCH];
+    }
+
+    private static int allocateAndFree(final SharedPool shared, final Batch batch) {
+        final Pooled<ByteBuffer>[] buffers = batch.buffers;
+        int capacity = 0;
+        for (int i = 0; i < BATCH; i ++) {
+            buffers[i] = shared.pool.allocate();
+        }
+        for (int i = 0; i < BATCH; i ++) {
+            capacity += buffers[i].getResource().capacity();
+            buffers[i].free();
+        }
+        return capacity;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int threads1(final SharedPool shared, final Batch batch) {
+        return allocateAndFree(shared, batch);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public int threads4(final SharedPool shared, final Batch batch) {
+        return allocateAndFree(shared, batch);
+    }
+
+    @Benchmark
+    @Threads(16)
+    public int threads16(final SharedPool shared, final Batch batch) {
+        return allocateAndFree(shared, batch);
+    }
+
+    @Benchmark
+    @Threads(64)
+    public int threads64(final SharedPool shared, final Batch batch) {
+        return allocateAndFree(shared, batch);
+    }
+}
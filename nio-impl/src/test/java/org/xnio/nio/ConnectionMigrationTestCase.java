@@ -0,0 +1,320 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.xnio.nio.AcceptTestSupport.acceptOne;
+import static org.xnio.nio.AcceptTestSupport.startServer;
+import static org.xnio.nio.AcceptTestSupport.xnio;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.ChannelListener;
+import org.xnio.ChannelPipe;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.XnioIoThread;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+/**
+ * Test for moving connections between the I/O threads of a worker.
+ */
+public final class ConnectionMigrationTestCase {
+
+    private static void awaitThread(final StreamConnection connection, final XnioIoThread thread) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (connection.getIoThread() != thread) {
+            if (System.nanoTime() - deadline > 0L) {
+                fail("Connection was not moved to " + thread);
+            }
+            Thread.sleep(1L);
+        }
+    }
+
+    @Test
+    public void testMigrateKeepsState() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = startServer(worker, OptionMap.EMPTY, acceptOne(accepted));
+        try {
+            final StreamConnection client = worker.openStreamConnection(server.getLocalAddress(), null, OptionMap.EMPTY).get();
+            final StreamConnection peer = accepted.poll(5L, TimeUnit.SECONDS);
+            try {
+                final XnioIoThread source = client.getIoThread();
+                final WorkerThread target = worker.getAll()[0] == source ? worker.getAll()[1] : worker.getAll()[0];
+                final CountDownLatch readable = new CountDownLatch(1);
+                final BlockingQueue<Thread> readThreads = new LinkedBlockingQueue<Thread>();
+                client.setOption(Options.READ_TIMEOUT, Integer.valueOf(30000));
+                client.getSourceChannel().getReadSetter().set(new ChannelListener<ConduitStreamSourceChannel>() {
+                    public void handleEvent(final ConduitStreamSourceChannel channel) {
+                        readThreads.add(Thread.currentThread());
+                        try {
+                            if (channel.read(ByteBuffer.allocate(16)) > 0) {
+                                readable.countDown();
+                            }
+                        } catch (Exception e) {
+                            IoUtils.safeClose(channel);
+                        }
+                    }
+                });
+                client.getSourceChannel().resumeReads();
+                worker.migrateConnection(client, target);
+                awaitThread(client, target);
+                assertSame(target, client.getSourceChannel().getIoThread());
+                assertSame(target, client.getSinkChannel().getIoThread());
+                assertTrue(client.getSourceChannel().isReadResumed());
+                assertEquals(Integer.valueOf(30000), client.getOption(Options.READ_TIMEOUT));
+                assertEquals(1L, ((WorkerThread) source).getMigratedConnectionCount());
+                peer.getSinkChannel().write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+                assertTrue(readable.await(5L, TimeUnit.SECONDS));
+                for (Thread thread : readThreads) {
+                    assertSame(target, thread);
+                }
+            } finally {
+                IoUtils.safeClose(client, peer);
+            }
+        } finally {
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testResumeRacingMigrateIsKept() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = startServer(worker, OptionMap.EMPTY, acceptOne(accepted));
+        try {
+            final StreamConnection client = worker.openStreamConnection(server.getLocalAddress(), null, OptionMap.EMPTY).get();
+            final StreamConnection peer = accepted.poll(5L, TimeUnit.SECONDS);
+            try {
+                final NioSocketConduit conduit = ((NioSocketStreamConnection) client).getConduit();
+                final CountDownLatch readable = new CountDownLatch(1);
+                client.getSourceChannel().getReadSetter().set(new ChannelListener<ConduitStreamSourceChannel>() {
+                    public void handleEvent(final ConduitStreamSourceChannel channel) {
+                        try {
+                            if (channel.read(ByteBuffer.allocate(16)) > 0) {
+                                readable.countDown();
+                            }
+                        } catch (Exception e) {
+                            IoUtils.safeClose(channel);
+                        }
+                    }
+                });
+                for (int i = 0; i < 200; i ++) {
+                    client.getSourceChannel().suspendReads();
+                    final XnioIoThread source = client.getIoThread();
+                    final WorkerThread target = worker.getAll()[0] == source ? worker.getAll()[1] : worker.getAll()[0];
+                    // the move is forwarded to the source thread, and races with the resume below
+                    worker.migrateConnection(client, target);
+                    client.getSourceChannel().resumeReads();
+                    awaitThread(client, target);
+                    assertTrue(client.getSourceChannel().isReadResumed());
+                    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+                    while ((conduit.getSelectionKey().interestOps() & SelectionKey.OP_READ) == 0) {
+                        if (System.nanoTime() - deadline > 0L) {
+                            fail("Resume was lost in move " + i);
+                        }
+                        Thread.sleep(1L);
+                    }
+                }
+                peer.getSinkChannel().write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+                assertTrue(readable.await(5L, TimeUnit.SECONDS));
+            } finally {
+                IoUtils.safeClose(client, peer);
+            }
+        } finally {
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testMigrationsTowardsEachOther() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = startServer(worker, OptionMap.EMPTY, acceptOne(accepted));
+        final StreamConnection[] clients = new StreamConnection[2];
+        try {
+            final WorkerThread[] threads = worker.getAll();
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = worker.openStreamConnection(server.getLocalAddress(), null, OptionMap.EMPTY).get();
+                worker.migrateConnection(clients[i], threads[i]);
+                awaitThread(clients[i], threads[i]);
+            }
+            for (int i = 0; i < 100; i ++) {
+                // each thread moves its connection to the other at the same time
+                final int round = i;
+                final CountDownLatch start = new CountDownLatch(1);
+                for (int j = 0; j < clients.length; j ++) {
+                    final StreamConnection client = clients[j];
+                    final WorkerThread target = threads[(j + round + 1) & 1];
+                    client.getIoThread().execute(new Runnable() {
+                        public void run() {
+                            try {
+                                start.await();
+                                worker.migrateConnection(client, target);
+                            } catch (Exception ignored) {
+                            }
+                        }
+                    });
+                }
+                start.countDown();
+                for (int j = 0; j < clients.length; j ++) {
+                    awaitThread(clients[j], threads[(j + round + 1) & 1]);
+                }
+            }
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRebalanceMovesPartialShare() throws Exception {
+        final NioXnioWorker serverWorker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = startServer(serverWorker, OptionMap.EMPTY, acceptOne(accepted));
+        final StreamConnection[] clients = new StreamConnection[3];
+        try {
+            final WorkerThread source = worker.getAll()[0];
+            final WorkerThread target = worker.getAll()[1];
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = worker.openStreamConnection(server.getLocalAddress(), null, OptionMap.EMPTY).get();
+                worker.migrateConnection(clients[i], source);
+                awaitThread(clients[i], source);
+                // 1000, 2000 and 4000 bytes
+                final ByteBuffer buffer = ByteBuffer.allocate(1000 << i);
+                while (buffer.hasRemaining()) {
+                    clients[i].getSinkChannel().write(buffer);
+                }
+            }
+            // half of the 7000 bytes should move, so the 2000 byte connection is the best fit
+            source.execute(new Runnable() {
+                public void run() {
+                    ConnectionRebalancer.rebalance(source, target, 0.5, 0L);
+                }
+            });
+            awaitThread(clients[1], target);
+            assertSame(source, clients[0].getIoThread());
+            assertSame(source, clients[2].getIoThread());
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+            serverWorker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+        assertTrue(serverWorker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testRebalancedConnectionIsHeld() throws Exception {
+        final NioXnioWorker serverWorker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final AcceptingChannel<StreamConnection> server = startServer(serverWorker, OptionMap.EMPTY, acceptOne(accepted));
+        final StreamConnection[] clients = new StreamConnection[3];
+        try {
+            final WorkerThread source = worker.getAll()[0];
+            final WorkerThread target = worker.getAll()[1];
+            final Runnable rebalance = new Runnable() {
+                public void run() {
+                    ConnectionRebalancer.rebalance(source, target, 0.5, TimeUnit.MINUTES.toNanos(1L));
+                }
+            };
+            for (int i = 0; i < clients.length; i ++) {
+                clients[i] = worker.openStreamConnection(server.getLocalAddress(), null, OptionMap.EMPTY).get();
+                worker.migrateConnection(clients[i], source);
+                awaitThread(clients[i], source);
+            }
+            for (int pass = 0; pass < 2; pass ++) {
+                for (int i = 0; i < clients.length; i ++) {
+                    // 1000, 2000 and 4000 bytes
+                    final ByteBuffer buffer = ByteBuffer.allocate(1000 << i);
+                    while (buffer.hasRemaining()) {
+                        clients[i].getSinkChannel().write(buffer);
+                    }
+                }
+                source.execute(rebalance);
+                if (pass == 0) {
+                    awaitThread(clients[1], target);
+                    // moved back by hand, but still held
+                    worker.migrateConnection(clients[1], source);
+                    awaitThread(clients[1], source);
+                }
+            }
+            // the best fit is held, so the next best one moves instead
+            awaitThread(clients[0], target);
+            assertSame(source, clients[1].getIoThread());
+            assertSame(source, clients[2].getIoThread());
+        } finally {
+            IoUtils.safeClose(clients);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+            serverWorker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+        assertTrue(serverWorker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testPipeConnectionIsRejected() throws Exception {
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+        try {
+            final ChannelPipe<StreamConnection, StreamConnection> pipe = worker.createFullDuplexPipeConnection();
+            try {
+                worker.migrateConnection(pipe.getLeftSide(), worker.getAll()[0]);
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            } finally {
+                IoUtils.safeClose(pipe.getLeftSide(), pipe.getRightSide());
+            }
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
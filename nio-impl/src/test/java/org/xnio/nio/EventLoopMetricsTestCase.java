@@ -0,0 +1,128 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioExecutor;
+
+/**
+ * Test for the event loop statistics of {@link WorkerThread}.
+ */
+public final class EventLoopMetricsTestCase {
+
+    @Test
+    public void testTaskAndTimerStatistics() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", EventLoopMetricsTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        try {
+            final WorkerThread thread = worker.getAll()[0];
+            final CountDownLatch latch = new CountDownLatch(1);
+            thread.execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(20L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(5L, TimeUnit.SECONDS));
+            final XnioExecutor.Key key = thread.executeAfter(new Runnable() {
+                public void run() {
+                }
+            }, 1L, TimeUnit.HOURS);
+            assertTrue(awaitDelayedTaskCount(thread, 1));
+            assertEquals(0, thread.getTaskQueueSize());
+            assertTrue(key.remove());
+            thread.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            assertTrue(awaitDelayedTaskCount(thread, 0));
+            // statistics are published as each phase of the loop completes, so check them once it has gone around
+            assertTrue(thread.getTaskTime() >= TimeUnit.MILLISECONDS.toNanos(20L));
+            // the tasks above may all have run without a select in between; the lag probe forces one eventually
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (thread.getSelectCount() == 0L && System.nanoTime() - deadline < 0L) {
+                Thread.sleep(5L);
+            }
+            assertTrue(thread.getSelectCount() > 0L);
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testWakeupCounts() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", EventLoopMetricsTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            final WorkerThread thread = worker.getAll()[0];
+            // give the thread time to block in select, so the task below must wake it
+            Thread.sleep(50L);
+            final CountDownLatch started = new CountDownLatch(1);
+            thread.execute(new Runnable() {
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+            assertTrue(started.await(5L, TimeUnit.SECONDS));
+            assertTrue(thread.getWakeupCount() > 0L);
+            // the thread is running a task, so this needs no wakeup
+            final long suppressed = thread.getSuppressedWakeupCount();
+            thread.execute(new Runnable() {
+                public void run() {
+                }
+            });
+            assertEquals(suppressed + 1L, thread.getSuppressedWakeupCount());
+        } finally {
+            release.countDown();
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    private static boolean awaitDelayedTaskCount(final WorkerThread thread, final int expected) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (thread.getDelayedTaskCount() != expected) {
+            if (System.nanoTime() - deadline > 0L) {
+                return false;
+            }
+            Thread.sleep(5L);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link MpscQueue}.
+ */
+public final class MpscQueueTestCase {
+
+    @Test
+    public void testFifo() {
+        final MpscQueue<Integer> queue = new MpscQueue<Integer>();
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+        for (int i = 0; i < 100; i ++) {
+            queue.offer(Integer.valueOf(i));
+        }
+        assertFalse(queue.isEmpty());
+        for (int i = 0; i < 100; i ++) {
+            assertEquals(Integer.valueOf(i), queue.poll());
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        final int producers = 8;
+        final int count = 100000;
+        final MpscQueue<long[]> queue = new MpscQueue<long[]>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i ++) {
+            final int id = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < count; j ++) {
+                        queue.offer(new long[] { id, j });
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        final int[] next = new int[producers];
+        int received = 0;
+        while (received < producers * count) {
+            final long[] item = queue.poll();
+            if (item == null) {
+                Thread.yield();
+                continue;
+            }
+            // each producer's elements must arrive in order
+            assertEquals(next[(int) item[0]]++, item[1]);
+            received ++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertTrue(queue.isEmpty());
+        assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+import org.xnio.ChannelListener;
+import org.xnio.ChannelPipe;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.channels.StreamSinkChannel;
+import org.xnio.channels.StreamSourceChannel;
+
+/**
+ * Test for the task and key budgets of {@link WorkerThread}.
+ */
+public final class SchedulingBudgetTestCase {
+
+    @Test
+    public void testTaskFloodDoesNotStarveIo() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", SchedulingBudgetTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1, Options.WORKER_IO_TASK_BUDGET, 16));
+        final AtomicBoolean stop = new AtomicBoolean();
+        try {
+            final WorkerThread thread = worker.getAll()[0];
+            final ChannelPipe<StreamSourceChannel, StreamSinkChannel> pipe = worker.createHalfDuplexPipe();
+            final CountDownLatch writable = new CountDownLatch(1);
+            final CountDownLatch timer = new CountDownLatch(1);
+            pipe.getRightSide().getWriteSetter().set(new ChannelListener<StreamSinkChannel>() {
+                public void handleEvent(final StreamSinkChannel channel) {
+                    channel.suspendWrites();
+                    writable.countDown();
+                }
+            });
+            // each task queues itself again, so the queue never drains
+            final Runnable flood = new Runnable() {
+                public void run() {
+                    if (! stop.get()) {
+                        thread.execute(this);
+                    }
+                }
+            };
+            for (int i = 0; i < 4; i ++) {
+                thread.execute(flood);
+            }
+            thread.executeAfter(new Runnable() {
+                public void run() {
+                    timer.countDown();
+                }
+            }, 10L, TimeUnit.MILLISECONDS);
+            pipe.getRightSide().resumeWrites();
+            assertTrue(writable.await(5L, TimeUnit.SECONDS));
+            assertTrue(timer.await(5L, TimeUnit.SECONDS));
+            assertTrue(thread.getTaskBudgetExhaustedCount() > 0L);
+            stop.set(true);
+            IoUtils.safeClose(pipe.getLeftSide(), pipe.getRightSide());
+        } finally {
+            stop.set(true);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testKeyBudgetDefersReadyKeys() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", SchedulingBudgetTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1, Options.WORKER_IO_KEY_BUDGET, 1));
+        try {
+            final WorkerThread thread = worker.getAll()[0];
+            final ChannelPipe<StreamSourceChannel, StreamSinkChannel> pipe1 = worker.createHalfDuplexPipe();
+            final ChannelPipe<StreamSourceChannel, StreamSinkChannel> pipe2 = worker.createHalfDuplexPipe();
+            final CountDownLatch writable = new CountDownLatch(2);
+            final ChannelListener<StreamSinkChannel> listener = new ChannelListener<StreamSinkChannel>() {
+                public void handleEvent(final StreamSinkChannel channel) {
+                    channel.suspendWrites();
+                    writable.countDown();
+                }
+            };
+            pipe1.getRightSide().getWriteSetter().set(listener);
+            pipe2.getRightSide().getWriteSetter().set(listener);
+            // resume both from the I/O thread so that they become ready in the same select
+            thread.execute(new Runnable() {
+                public void run() {
+                    pipe1.getRightSide().resumeWrites();
+                    pipe2.getRightSide().resumeWrites();
+                }
+            });
+            assertTrue(writable.await(5L, TimeUnit.SECONDS));
+            assertTrue(thread.getKeyBudgetExhaustedCount() > 0L);
+            IoUtils.safeClose(pipe1.getLeftSide(), pipe1.getRightSide(), pipe2.getLeftSide(), pipe2.getRightSide());
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
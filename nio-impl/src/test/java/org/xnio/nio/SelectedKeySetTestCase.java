@@ -0,0 +1,87 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.Pipe;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link SelectedKeySet}.
+ */
+public final class SelectedKeySetTestCase {
+
+    @Test
+    public void testAddAndReset() throws Exception {
+        final Selector selector = Selector.open();
+        final Pipe pipe = Pipe.open();
+        try {
+            pipe.source().configureBlocking(false);
+            final SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+            final SelectedKeySet set = new SelectedKeySet();
+            for (int i = 0; i < 3000; i ++) {
+                assertTrue(set.add(key));
+            }
+            assertFalse(set.add(null));
+            assertEquals(3000, set.size());
+            assertFalse(set.contains(key));
+            set.reset();
+            assertEquals(0, set.size());
+            assertNull(set.keys[0]);
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+            selector.close();
+        }
+    }
+
+    @Test
+    public void testInstalledSetReceivesReadyKeys() throws Exception {
+        final Selector selector = Selector.open();
+        final Pipe pipe = Pipe.open();
+        try {
+            final SelectedKeySet set = SelectedKeySet.install(selector);
+            if (set == null) {
+                // reflective access is not available here; the I/O thread would use the default set
+                return;
+            }
+            pipe.source().configureBlocking(false);
+            final SelectionKey key = pipe.source().register(selector, SelectionKey.OP_READ);
+            pipe.sink().write(ByteBuffer.wrap(new byte[] { 1 }));
+            assertEquals(1, selector.select(5000L));
+            assertEquals(1, set.size);
+            assertSame(key, set.keys[0]);
+            assertSame(set, selector.selectedKeys());
+            set.reset();
+        } finally {
+            pipe.source().close();
+            pipe.sink().close();
+            selector.close();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xnio.ChannelListener;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.conduits.ConduitStreamSinkChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+/**
+ * Loopback echo benchmark comparing the default selected key handling of the I/O thread with the array-backed
+ * {@link SelectedKeySet}.  Many client threads each keep one request in flight against an echo server running on
+ * two I/O threads, so that most selects return several ready keys.  Run with
+ * {@code java -cp <test classpath> org.openjdk.jmh.Main SelectedKeysBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(32)
+public class SelectedKeysBenchmark {
+
+    private static final int MESSAGE_SIZE = 64;
+
+    @State(Scope.Benchmark)
+    public static class Server {
+        XnioWorker worker;
+        AcceptingChannel<StreamConnection> server;
+        InetSocketAddress address;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            final Xnio xnio = Xnio.getInstance("nio", SelectedKeysBenchmark.class.getClassLoader());
+            worker = xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2));
+            server = worker.createStreamConnectionServer(new InetSocketAddress(Inet4Address.getByName("127.0.0.1"), 0), new ChannelListener<AcceptingChannel<StreamConnection>>() {
+                public void handleEvent(final AcceptingChannel<StreamConnection> channel) {
+                    try {
+                        StreamConnection connection;
+                        while ((connection = channel.accept()) != null) {
+                            new Echo(connection);
+                        }
+                    } catch (IOException e) {
+                        IoUtils.safeClose(channel);
+                    }
+                }
+            }, OptionMap.create(Options.TCP_NODELAY, Boolean.TRUE));
+            server.resumeAccepts();
+            address = server.getLocalAddress(InetSocketAddress.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws InterruptedException {
+            IoUtils.safeClose(server);
+            worker.shutdown();
+            worker.awaitTermination();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+        SocketChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE);
+
+        @Setup(Level.Trial)
+        public void setUp(final Server server) throws IOException {
+            channel = SocketChannel.open(server.address);
+            channel.socket().setTcpNoDelay(true);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            IoUtils.safeClose(channel);
+        }
+
+        int roundTrip() throws IOException {
+            final ByteBuffer buffer = this.buffer;
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) == -1) {
+                    throw new IOException("Unexpected end of stream");
+                }
+            }
+            return buffer.get(0);
+        }
+    }
+
+    static final class Echo {
+        private final ConduitStreamSourceChannel source;
+        private final ConduitStreamSinkChannel sink;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(MESSAGE_SIZE * 4);
+
+        Echo(final StreamConnection connection) {
+            source = connection.getSourceChannel();
+            sink = connection.getSinkChannel();
+            source.setReadListener(new ChannelListener<ConduitStreamSourceChannel>() {
+                public void handleEvent(final ConduitStreamSourceChannel channel) {
+                    try {
+                        if (channel.read(buffer) == -1) {
+                            IoUtils.safeClose(connection);
+                            return;
+                        }
+                        flush();
+                    } catch (IOException e) {
+                        IoUtils.safeClose(connection);
+                    }
+                }
+            });
+            sink.setWriteListener(new ChannelListener<ConduitStreamSinkChannel>() {
+                public void handleEvent(final ConduitStreamSinkChannel channel) {
+                    try {
+                        flush();
+                    } catch (IOException e) {
+                        IoUtils.safeClose(connection);
+                    }
+                }
+            });
+            source.resumeReads();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            try {
+                sink.write(buffer);
+            } finally {
+                buffer.compact();
+            }
+            if (buffer.position() > 0) {
+                source.suspendReads();
+                sink.resumeWrites();
+            } else {
+                sink.suspendWrites();
+                source.resumeReads();
+            }
+        }
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "-Dxnio.nio.optimize-selected-keys=false")
+    public int hashSetKeys(final Client client) throws IOException {
+        return client.roundTrip();
+    }
+
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = { "-Dxnio.nio.optimize-selected-keys=true", "-XX:+IgnoreUnrecognizedVMOptions", "--add-opens=java.base/sun.nio.ch=ALL-UNNAMED" })
+    public int arraySetKeys(final Client client) throws IOException {
+        return client.roundTrip();
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+
+/**
+ * Test for {@link StallWatchdog}.
+ */
+public final class StallWatchdogTestCase {
+
+    @Test
+    public void testStallIsCountedOnce() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", StallWatchdogTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 2, Options.WORKER_IO_STALL_THRESHOLD, 20));
+        try {
+            final CountDownLatch latch = new CountDownLatch(2);
+            final Runnable slow = new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(200L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    latch.countDown();
+                }
+            };
+            worker.getAll()[0].execute(slow);
+            worker.getAll()[0].execute(slow);
+            assertTrue(latch.await(5L, TimeUnit.SECONDS));
+            Thread.sleep(50L);
+            assertEquals(2L, worker.getStallCount());
+            // short tasks are never reported
+            final CountDownLatch fast = new CountDownLatch(100);
+            for (int i = 0; i < 100; i ++) {
+                worker.getAll()[1].execute(new Runnable() {
+                    public void run() {
+                        fast.countDown();
+                    }
+                });
+            }
+            assertTrue(fast.await(5L, TimeUnit.SECONDS));
+            Thread.sleep(50L);
+            assertEquals(2L, worker.getStallCount());
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", StallWatchdogTestCase.class.getClassLoader());
+        final NioXnioWorker worker = (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, 1));
+        try {
+            final CountDownLatch latch = new CountDownLatch(1);
+            worker.getAll()[0].execute(new Runnable() {
+                public void run() {
+                    try {
+                        Thread.sleep(50L);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    latch.countDown();
+                }
+            });
+            assertTrue(latch.await(5L, TimeUnit.SECONDS));
+            assertEquals(0L, worker.getStallCount());
+            assertEquals(null, worker.getAll()[0].getRunning());
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testListenerName() {
+        final StackTraceElement[] stack = new StackTraceElement[] {
+                new StackTraceElement("java.lang.Thread", "sleep", null, -1),
+                new StackTraceElement("com.example.Inner", "handleEvent", null, 20),
+                new StackTraceElement("org.xnio.ChannelListeners", "invokeChannelListener", null, 90),
+                new StackTraceElement("com.example.Outer", "handleEvent", null, 10),
+                new StackTraceElement("org.xnio.ChannelListeners", "invokeChannelListener", null, 90),
+                new StackTraceElement("org.xnio.nio.WorkerThread", "run", null, 500),
+        };
+        assertEquals("com.example.Outer", StallWatchdog.listenerName(stack, this));
+        assertEquals(String.class.getName(), StallWatchdog.listenerName(new StackTraceElement[0], "task"));
+    }
+}
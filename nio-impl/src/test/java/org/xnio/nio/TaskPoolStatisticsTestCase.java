@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Pipe;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.ObjectName;
+import javax.management.openmbean.TabularData;
+
+import org.junit.Test;
+import org.xnio.ChannelListener;
+import org.xnio.ChannelListeners;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+/**
+ * Test for the worker task pool statistics.
+ */
+public final class TaskPoolStatisticsTestCase {
+
+    private static final Xnio xnio = Xnio.getInstance("nio", TaskPoolStatisticsTestCase.class.getClassLoader());
+
+    private static final int LISTENER_TASKS = 400;
+
+    private static final String SAMPLE_INTERVAL_PROPERTY = "xnio.worker.task-sample-interval";
+
+    static final class CountingListener implements ChannelListener<Pipe.SourceChannel> {
+
+        private final CountDownLatch latch;
+
+        CountingListener(final CountDownLatch latch) {
+            this.latch = latch;
+        }
+
+        public void handleEvent(final Pipe.SourceChannel channel) {
+            latch.countDown();
+        }
+    }
+
+    /**
+     * Create a worker which times every task rather than a sample, so that the timing statistics are exact.
+     */
+    static XnioWorker createTimingWorker(final OptionMap optionMap) throws Exception {
+        final String old = System.setProperty(SAMPLE_INTERVAL_PROPERTY, "1");
+        try {
+            return xnio.createWorker(optionMap);
+        } finally {
+            if (old == null) {
+                System.clearProperty(SAMPLE_INTERVAL_PROPERTY);
+            } else {
+                System.setProperty(SAMPLE_INTERVAL_PROPERTY, old);
+            }
+        }
+    }
+
+    private static Object getAttribute(final XnioWorker worker, final String attribute) throws Exception {
+        final ObjectName objectName = new ObjectName("org.xnio:type=Xnio,provider=\"nio\",worker=" + ObjectName.quote(worker.getName()));
+        return ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, attribute);
+    }
+
+    private static void awaitAttribute(final XnioWorker worker, final String attribute, final Number value) throws Exception {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+        while (! value.equals(getAttribute(worker, attribute))) {
+            if (System.nanoTime() - deadline > 0L) {
+                fail(attribute + " was " + getAttribute(worker, attribute) + " rather than " + value);
+            }
+            Thread.sleep(10L);
+        }
+    }
+
+    private static long sum(final long[] histogram, final int from) {
+        long sum = 0L;
+        for (int i = from; i < histogram.length; i++) {
+            sum += histogram[i];
+        }
+        return sum;
+    }
+
+    @Test
+    public void testStatistics() throws Exception {
+        final XnioWorker worker = createTimingWorker(OptionMap.builder()
+                .set(Options.WORKER_NAME, "task-pool-statistics")
+                .set(Options.WORKER_IO_THREADS, 1)
+                .set(Options.WORKER_TASK_MAX_THREADS, 2)
+                .getMap());
+        final Pipe pipe = Pipe.open();
+        try {
+            final CountDownLatch started = new CountDownLatch(2);
+            final CountDownLatch release = new CountDownLatch(1);
+            for (int i = 0; i < 2; i ++) {
+                worker.execute(new Runnable() {
+                    public void run() {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+            }
+            assertTrue(started.await(5L, TimeUnit.SECONDS));
+            assertEquals(Integer.valueOf(2), getAttribute(worker, "ActiveTaskCount"));
+            final CountDownLatch listened = new CountDownLatch(LISTENER_TASKS);
+            final CountingListener listener = new CountingListener(listened);
+            for (int i = 0; i < LISTENER_TASKS; i ++) {
+                worker.execute(ChannelListeners.getChannelListenerTask(pipe.source(), listener));
+            }
+            // hold both threads for long enough to land in a high bucket
+            Thread.sleep(100L);
+            release.countDown();
+            assertTrue(listened.await(5L, TimeUnit.SECONDS));
+            awaitAttribute(worker, "CompletedTaskCount", Long.valueOf(LISTENER_TASKS + 2));
+            awaitAttribute(worker, "ActiveTaskCount", Integer.valueOf(0));
+
+            final long[] runTimes = (long[]) getAttribute(worker, "TaskRunTimeHistogram");
+            final long[] waitTimes = (long[]) getAttribute(worker, "TaskWaitTimeHistogram");
+            assertEquals(LISTENER_TASKS + 2, sum(runTimes, 0));
+            assertEquals(LISTENER_TASKS + 2, sum(waitTimes, 0));
+            // the blocked tasks ran for at least 65ms, and the listener tasks queued behind them as long
+            assertEquals(2L, sum(runTimes, 17));
+            assertTrue(sum(waitTimes, 17) > 0L);
+
+            // listener tasks are attributed to the listener class
+            final TabularData top = (TabularData) getAttribute(worker, "TopTaskClassRunTimes");
+            assertTrue(top.containsKey(new Object[] { CountingListener.class.getName() }));
+        } finally {
+            IoUtils.safeClose(pipe.source(), pipe.sink());
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOnlySampledTasksAreTimed() throws Exception {
+        final String old = System.setProperty(SAMPLE_INTERVAL_PROPERTY, "1000000000");
+        final XnioWorker worker;
+        try {
+            worker = xnio.createWorker(OptionMap.builder()
+                    .set(Options.WORKER_NAME, "task-pool-sampling")
+                    .set(Options.WORKER_IO_THREADS, 1)
+                    .set(Options.WORKER_TASK_MAX_THREADS, 2)
+                    .getMap());
+        } finally {
+            if (old == null) {
+                System.clearProperty(SAMPLE_INTERVAL_PROPERTY);
+            } else {
+                System.setProperty(SAMPLE_INTERVAL_PROPERTY, old);
+            }
+        }
+        try {
+            final CountDownLatch ran = new CountDownLatch(LISTENER_TASKS);
+            for (int i = 0; i < LISTENER_TASKS; i ++) {
+                worker.execute(new Runnable() {
+                    public void run() {
+                        ran.countDown();
+                    }
+                });
+            }
+            assertTrue(ran.await(5L, TimeUnit.SECONDS));
+            // every task is counted, but practically none is timed
+            awaitAttribute(worker, "CompletedTaskCount", Long.valueOf(LISTENER_TASKS));
+            assertEquals(Long.valueOf(LISTENER_TASKS), getAttribute(worker, "StartedTaskCount"));
+            assertEquals(Long.valueOf(0L), getAttribute(worker, "MaxTaskWaitTime"));
+            assertEquals(0L, sum((long[]) getAttribute(worker, "TaskRunTimeHistogram"), 0));
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.TaskPoolType;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+/**
+ * Test for the worker task pool types.
+ */
+public final class TaskPoolTypeTestCase {
+
+    private static final Xnio xnio = Xnio.getInstance("nio", TaskPoolTypeTestCase.class.getClassLoader());
+
+    private static int getWorkerQueueSize(final XnioWorker worker) throws Exception {
+        final ObjectName objectName = new ObjectName("org.xnio:type=Xnio,provider=\"nio\",worker=" + ObjectName.quote(worker.getName()));
+        return ((Integer) ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, "WorkerQueueSize")).intValue();
+    }
+
+    @Test
+    public void testForkJoin() throws Exception {
+        final XnioWorker worker = xnio.createWorker(OptionMap.builder()
+                .set(Options.WORKER_NAME, "fork-join-worker")
+                .set(Options.WORKER_IO_THREADS, 1)
+                .set(Options.WORKER_TASK_MAX_THREADS, 1)
+                .set(Options.WORKER_TASK_POOL_TYPE, TaskPoolType.FORK_JOIN)
+                .getMap());
+        try {
+            assertEquals(TaskPoolType.FORK_JOIN, worker.getOption(Options.WORKER_TASK_POOL_TYPE));
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(3);
+            final AtomicInteger forkJoinThreads = new AtomicInteger();
+            for (int i = 0; i < 3; i ++) {
+                worker.execute(new Runnable() {
+                    public void run() {
+                        if (Thread.currentThread() instanceof ForkJoinWorkerThread && Thread.currentThread().getName().startsWith("fork-join-worker task-")) {
+                            forkJoinThreads.incrementAndGet();
+                        }
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+            // with a parallelism of one, the first task holds up the other two
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (getWorkerQueueSize(worker) != 2) {
+                if (System.nanoTime() - deadline > 0L) {
+                    fail("Queue size was " + getWorkerQueueSize(worker));
+                }
+                Thread.sleep(10L);
+            }
+            release.countDown();
+            assertTrue(done.await(5L, TimeUnit.SECONDS));
+            assertEquals(3, forkJoinThreads.get());
+            assertEquals(0, getWorkerQueueSize(worker));
+            // the pool is not resizable
+            assertEquals(Integer.valueOf(1), worker.setOption(Options.WORKER_TASK_MAX_THREADS, Integer.valueOf(4)));
+            assertEquals(Integer.valueOf(1), worker.getOption(Options.WORKER_TASK_MAX_THREADS));
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        final OptionMap optionMap = OptionMap.create(Options.WORKER_IO_THREADS, 1, Options.WORKER_TASK_POOL_TYPE, TaskPoolType.VIRTUAL_THREADS);
+        final String version = System.getProperty("java.specification.version");
+        if (version.startsWith("1.") || Integer.parseInt(version) < 21) {
+            try {
+                xnio.createWorker(optionMap);
+                fail("Expected IllegalArgumentException");
+            } catch (IllegalArgumentException expected) {
+            }
+            return;
+        }
+        final XnioWorker worker = xnio.createWorker(optionMap);
+        try {
+            // far more blocked tasks than the thread pool would ever start
+            final int count = 1000;
+            final CountDownLatch started = new CountDownLatch(count);
+            final CountDownLatch release = new CountDownLatch(1);
+            final CountDownLatch done = new CountDownLatch(count);
+            for (int i = 0; i < count; i ++) {
+                worker.execute(new Runnable() {
+                    public void run() {
+                        started.countDown();
+                        try {
+                            release.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        done.countDown();
+                    }
+                });
+            }
+            assertTrue(started.await(10L, TimeUnit.SECONDS));
+            release.countDown();
+            assertTrue(done.await(10L, TimeUnit.SECONDS));
+            assertEquals(0, getWorkerQueueSize(worker));
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Pooled;
+import org.xnio.TaskPoolType;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+/**
+ * Test for returning the buffers cached by worker task threads as the threads exit.
+ */
+public final class ThreadBufferCacheTestCase {
+
+    private static final Xnio xnio = Xnio.getInstance("nio", ThreadBufferCacheTestCase.class.getClassLoader());
+
+    private static final int THREADS = 4;
+    private static final int BUFFERS_PER_THREAD = 4;
+
+    private static void assertCachesReturned(final OptionMap optionMap) throws Exception {
+        final XnioWorker worker = xnio.createWorker(optionMap);
+        final AtomicInteger regions = new AtomicInteger();
+        final ByteBufferSlicePool pool = new ByteBufferSlicePool(new BufferAllocator<ByteBuffer>() {
+            public ByteBuffer allocate(final int size) {
+                regions.incrementAndGet();
+                return ByteBuffer.allocate(size);
+            }
+        }, 64, 64 * THREADS * BUFFERS_PER_THREAD);
+        final CountDownLatch allocated = new CountDownLatch(THREADS);
+        final BlockingQueue<Thread> threads = new LinkedBlockingQueue<Thread>();
+        try {
+            for (int t = 0; t < THREADS; t ++) {
+                worker.execute(new Runnable() {
+                    public void run() {
+                        threads.add(Thread.currentThread());
+                        final Pooled<?>[] pooled = new Pooled<?>[BUFFERS_PER_THREAD];
+                        for (int i = 0; i < pooled.length; i ++) {
+                            pooled[i] = pool.allocate();
+                        }
+                        // hold the buffers until every thread has its own, then cache them on this thread
+                        allocated.countDown();
+                        try {
+                            allocated.await(5L, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        for (Pooled<?> p : pooled) {
+                            p.free();
+                        }
+                    }
+                });
+            }
+            assertTrue(allocated.await(5L, TimeUnit.SECONDS));
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+        for (Thread thread : threads) {
+            thread.join(5000L);
+            assertFalse(thread.isAlive());
+        }
+        // without waiting for the garbage collector, every buffer of every region can be allocated again
+        final int carved = regions.get();
+        final Pooled<?>[] pooled = new Pooled<?>[carved * THREADS * BUFFERS_PER_THREAD];
+        for (int i = 0; i < pooled.length; i ++) {
+            pooled[i] = pool.allocate();
+        }
+        assertEquals(carved, regions.get());
+        for (Pooled<?> p : pooled) {
+            p.free();
+        }
+    }
+
+    @Test
+    public void testTaskThreadCachesReturnOnExit() throws Exception {
+        assertCachesReturned(OptionMap.create(Options.WORKER_IO_THREADS, 1, Options.WORKER_TASK_MAX_THREADS, THREADS));
+    }
+
+    @Test
+    public void testForkJoinThreadCachesReturnOnExit() throws Exception {
+        assertCachesReturned(OptionMap.builder()
+                .set(Options.WORKER_IO_THREADS, 1)
+                .set(Options.WORKER_TASK_MAX_THREADS, THREADS)
+                .set(Options.WORKER_TASK_POOL_TYPE, TaskPoolType.FORK_JOIN)
+                .getMap());
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.xnio.ChannelPipe;
+import org.xnio.IoThreadSelection;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Xnio;
+import org.xnio.channels.StreamSinkChannel;
+import org.xnio.channels.StreamSourceChannel;
+
+/**
+ * Test for the I/O thread selection strategies of {@link NioXnioWorker}.
+ */
+public final class ThreadSelectionTestCase {
+
+    private static NioXnioWorker createWorker(final int threads, final IoThreadSelection selection) throws Exception {
+        final Xnio xnio = Xnio.getInstance("nio", ThreadSelectionTestCase.class.getClassLoader());
+        return (NioXnioWorker) xnio.createWorker(OptionMap.create(Options.WORKER_IO_THREADS, threads, Options.WORKER_IO_THREAD_SELECTION, selection));
+    }
+
+    private static void assertBalanced(final IoThreadSelection selection, final int threads) throws Exception {
+        final NioXnioWorker worker = createWorker(threads, selection);
+        final List<ChannelPipe<StreamSourceChannel, StreamSinkChannel>> pipes = new ArrayList<ChannelPipe<StreamSourceChannel, StreamSinkChannel>>();
+        try {
+            for (int i = 0; i < threads * 3; i ++) {
+                pipes.add(worker.createHalfDuplexPipe());
+            }
+            for (WorkerThread thread : worker.getAll()) {
+                // each pipe registers both of its ends with the chosen thread
+                assertEquals(6, thread.getRegisteredKeyCount());
+            }
+        } finally {
+            for (ChannelPipe<StreamSourceChannel, StreamSinkChannel> pipe : pipes) {
+                IoUtils.safeClose(pipe.getLeftSide(), pipe.getRightSide());
+            }
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testLeastKeys() throws Exception {
+        assertBalanced(IoThreadSelection.LEAST_KEYS, 4);
+    }
+
+    @Test
+    public void testPowerOfTwoChoices() throws Exception {
+        // with two threads both are always compared
+        assertBalanced(IoThreadSelection.POWER_OF_TWO_CHOICES, 2);
+    }
+
+    @Test
+    public void testLeastBytes() throws Exception {
+        final NioXnioWorker worker = createWorker(2, IoThreadSelection.LEAST_BYTES);
+        try {
+            final ChannelPipe<StreamSourceChannel, StreamSinkChannel> pipe = worker.createHalfDuplexPipe();
+            try {
+                final WorkerThread busy = (WorkerThread) pipe.getLeftSide().getIoThread();
+                final ByteBuffer buffer = ByteBuffer.allocate(8192);
+                final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10L);
+                // keep traffic flowing until the thread has taken a load sample
+                while (busy.getRecentBytesTransferred() == 0L && System.nanoTime() - deadline < 0L) {
+                    buffer.clear();
+                    pipe.getRightSide().write(buffer);
+                    buffer.clear();
+                    pipe.getLeftSide().read(buffer);
+                    Thread.sleep(1L);
+                }
+                assertTrue(busy.getBytesTransferred() > 0L);
+                assertTrue(busy.getRecentBytesTransferred() > 0L);
+                for (int i = 0; i < 10; i ++) {
+                    assertNotSame(busy, worker.chooseThread());
+                }
+            } finally {
+                IoUtils.safeClose(pipe.getLeftSide(), pipe.getRightSide());
+            }
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testBytesNotCountedWithoutLeastBytes() throws Exception {
+        final NioXnioWorker worker = createWorker(2, IoThreadSelection.LEAST_KEYS);
+        try {
+            final ChannelPipe<StreamSourceChannel, StreamSinkChannel> pipe = worker.createHalfDuplexPipe();
+            try {
+                final ByteBuffer buffer = ByteBuffer.allocate(8192);
+                assertTrue(pipe.getRightSide().write(buffer) > 0);
+                buffer.clear();
+                assertTrue(pipe.getLeftSide().read(buffer) > 0);
+                assertEquals(0L, ((WorkerThread) pipe.getLeftSide().getIoThread()).getBytesTransferred());
+            } finally {
+                IoUtils.safeClose(pipe.getLeftSide(), pipe.getRightSide());
+            }
+        } finally {
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+}
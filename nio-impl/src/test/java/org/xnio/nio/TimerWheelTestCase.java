@@ -0,0 +1,178 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link TimerWheel}.
+ */
+public final class TimerWheelTestCase {
+
+    static final class TestEntry extends TimerWheel.Entry {
+        final long deadline;
+        boolean cancelled;
+
+        TestEntry(final long deadline) {
+            this.deadline = deadline;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    private static List<TestEntry> advance(final TimerWheel wheel, final long now) {
+        wheel.advance(now);
+        final List<TestEntry> list = new ArrayList<TestEntry>();
+        TestEntry entry;
+        while ((entry = (TestEntry) wheel.pollExpired()) != null) {
+            list.add(entry);
+        }
+        return list;
+    }
+
+    @Test
+    public void testEmpty() {
+        final TimerWheel wheel = new TimerWheel(1L << 40, 0L);
+        assertEquals(Long.MAX_VALUE, wheel.nextTick());
+        assertTrue(advance(wheel, 1000000L).isEmpty());
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testExpiresInOrderAndNeverEarly() {
+        final TimerWheel wheel = new TimerWheel(1L << 40, 0L);
+        final Random random = new Random(1234L);
+        final int count = 5000;
+        for (int i = 0; i < count; i ++) {
+            final long deadline = random.nextInt(1 << (random.nextInt(5) * 5 + 1));
+            final TestEntry entry = new TestEntry(deadline);
+            wheel.add(entry, deadline);
+        }
+        assertEquals(count, wheel.size());
+        long now = 0L;
+        long last = -1L;
+        int fired = 0;
+        while (wheel.size() > 0) {
+            final long next = wheel.nextTick();
+            assertTrue(next >= now);
+            now = next;
+            for (TestEntry entry : advance(wheel, now)) {
+                assertEquals(now, entry.deadline);
+                assertTrue(entry.deadline >= last);
+                last = entry.deadline;
+                fired ++;
+            }
+        }
+        assertEquals(count, fired);
+        assertEquals(Long.MAX_VALUE, wheel.nextTick());
+    }
+
+    @Test
+    public void testPendingCascadeOnBoundary() {
+        final TimerWheel wheel = new TimerWheel(1L << 40, 0L);
+        final TestEntry a = new TestEntry(64L);
+        wheel.add(a, 64L);
+        assertTrue(advance(wheel, 63L).isEmpty());
+        // the wheel now sits on a boundary whose cascade has not yet happened
+        final TestEntry b = new TestEntry(65L);
+        wheel.add(b, 65L);
+        assertEquals(64L, wheel.nextTick());
+        List<TestEntry> fired = advance(wheel, 64L);
+        assertEquals(1, fired.size());
+        assertSame(a, fired.get(0));
+        assertEquals(65L, wheel.nextTick());
+        fired = advance(wheel, 65L);
+        assertEquals(1, fired.size());
+        assertSame(b, fired.get(0));
+    }
+
+    @Test
+    public void testSameTickKeepsInsertionOrder() {
+        final TimerWheel wheel = new TimerWheel(1L << 40, 0L);
+        final TestEntry[] entries = new TestEntry[10];
+        for (int i = 0; i < entries.length; i ++) {
+            wheel.add(entries[i] = new TestEntry(5000L), 5000L);
+        }
+        final List<TestEntry> fired = advance(wheel, 10000L);
+        assertEquals(entries.length, fired.size());
+        for (int i = 0; i < entries.length; i ++) {
+            assertSame(entries[i], fired.get(i));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        final TimerWheel wheel = new TimerWheel(1L << 40, 0L);
+        final TestEntry a = new TestEntry(10L);
+        final TestEntry b = new TestEntry(100000L);
+        wheel.add(a, 10L);
+        wheel.add(b, 100000L);
+        assertTrue(wheel.remove(b));
+        assertFalse(wheel.remove(b));
+        assertEquals(1, wheel.size());
+        assertEquals(10L, wheel.nextTick());
+        assertTrue(wheel.remove(a));
+        assertEquals(0, wheel.size());
+        assertEquals(Long.MAX_VALUE, wheel.nextTick());
+        assertTrue(advance(wheel, 200000L).isEmpty());
+    }
+
+    @Test
+    public void testCancelledEntriesAreDiscarded() {
+        final TimerWheel wheel = new TimerWheel(1L << 40, 0L);
+        final TestEntry a = new TestEntry(70000L);
+        final TestEntry b = new TestEntry(70000L);
+        wheel.add(a, 70000L);
+        wheel.add(b, 70000L);
+        a.cancelled = true;
+        final List<TestEntry> fired = advance(wheel, 70000L);
+        assertEquals(1, fired.size());
+        assertSame(b, fired.get(0));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testOverdueAndClamped() {
+        final TimerWheel wheel = new TimerWheel(1000L, 500L);
+        final TestEntry overdue = new TestEntry(100L);
+        wheel.add(overdue, 100L);
+        assertEquals(500L, wheel.nextTick());
+        final List<TestEntry> fired = advance(wheel, 500L);
+        assertEquals(1, fired.size());
+        assertSame(overdue, fired.get(0));
+        // longer than the wheel can represent; it fires at the end of the wheel's range instead
+        final TestEntry far = new TestEntry(Long.MAX_VALUE);
+        wheel.add(far, Long.MAX_VALUE);
+        assertTrue(advance(wheel, 1000L).isEmpty());
+        assertNull(wheel.pollExpired());
+        assertEquals(1, advance(wheel, 501L + 4095L).size());
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Contention benchmark for the I/O thread work queue: several producer threads hand tasks to a single consumer,
+ * once through the lock-free {@link MpscQueue} and once through the {@code synchronized} {@code ArrayDeque} which
+ * it replaced.  Run with {@code java -cp <test classpath> org.openjdk.jmh.Main WorkQueueBenchmark}.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WorkQueueBenchmark {
+
+    private static final Runnable TASK = new Runnable() {
+        public void run() {
+        }
+    };
+
+    private final MpscQueue<Runnable> mpscQueue = new MpscQueue<Runnable>();
+
+    private final Object lock = new Object();
+    private final Queue<Runnable> lockedQueue = new ArrayDeque<Runnable>();
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(4)
+    public void mpscOffer() {
+        mpscQueue.offer(TASK);
+    }
+
+    @Benchmark
+    @Group("mpsc")
+    @GroupThreads(1)
+    public Runnable mpscPoll() {
+        return mpscQueue.poll();
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(4)
+    public void lockedOffer() {
+        synchronized (lock) {
+            lockedQueue.add(TASK);
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public Runnable lockedPoll() {
+        synchronized (lock) {
+            return lockedQueue.poll();
+        }
+    }
+}
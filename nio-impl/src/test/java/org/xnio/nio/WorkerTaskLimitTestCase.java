@@ -0,0 +1,229 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.xnio.nio;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.management.ManagementFactory;
+import java.net.Inet4Address;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+import org.xnio.ChannelListener;
+import org.xnio.ChannelListeners;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.StreamConnection;
+import org.xnio.TaskOverflowPolicy;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+import org.xnio.channels.AcceptingChannel;
+import org.xnio.conduits.ConduitStreamSourceChannel;
+
+/**
+ * Test for the bounded worker task queue.
+ */
+public final class WorkerTaskLimitTestCase {
+
+    private static final Xnio xnio = Xnio.getInstance("nio", WorkerTaskLimitTestCase.class.getClassLoader());
+
+    private static XnioWorker createWorker(final String name, final TaskOverflowPolicy policy) throws Exception {
+        return TaskPoolStatisticsTestCase.createTimingWorker(OptionMap.builder()
+                .set(Options.WORKER_NAME, name)
+                .set(Options.WORKER_IO_THREADS, 1)
+                .set(Options.WORKER_TASK_MAX_THREADS, 1)
+                .set(Options.WORKER_TASK_LIMIT, 1)
+                .set(Options.WORKER_TASK_OVERFLOW_POLICY, policy)
+                .getMap());
+    }
+
+    private static Object getAttribute(final XnioWorker worker, final String attribute) throws Exception {
+        final ObjectName objectName = new ObjectName("org.xnio:type=Xnio,provider=\"nio\",worker=" + ObjectName.quote(worker.getName()));
+        return ManagementFactory.getPlatformMBeanServer().getAttribute(objectName, attribute);
+    }
+
+    private static Runnable blockingTask(final CountDownLatch started, final CountDownLatch release) {
+        return new Runnable() {
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        };
+    }
+
+    /**
+     * Occupy the only task thread and fill the queue behind it.
+     */
+    private static void fill(final XnioWorker worker, final CountDownLatch release) throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        worker.execute(blockingTask(started, release));
+        assertTrue(started.await(5L, TimeUnit.SECONDS));
+        worker.execute(blockingTask(new CountDownLatch(1), release));
+    }
+
+    @Test
+    public void testReject() throws Exception {
+        final XnioWorker worker = createWorker("task-limit-reject", TaskOverflowPolicy.REJECT);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            fill(worker, release);
+            try {
+                worker.execute(blockingTask(new CountDownLatch(1), release));
+                fail("Expected RejectedExecutionException");
+            } catch (RejectedExecutionException expected) {
+            }
+            assertEquals(Integer.valueOf(1), getAttribute(worker, "WorkerQueueHighWater"));
+            assertEquals(Long.valueOf(1L), getAttribute(worker, "RejectedTaskCount"));
+            Thread.sleep(20L);
+            release.countDown();
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (((Long) getAttribute(worker, "StartedTaskCount")).longValue() != 2L) {
+                if (System.nanoTime() - deadline > 0L) {
+                    fail("Queued task did not start");
+                }
+                Thread.sleep(10L);
+            }
+            // the second task waited behind the first
+            assertTrue(((Long) getAttribute(worker, "MaxTaskWaitTime")).longValue() >= TimeUnit.MILLISECONDS.toNanos(20L));
+            assertTrue(((Long) getAttribute(worker, "TaskWaitTime")).longValue() >= TimeUnit.MILLISECONDS.toNanos(20L));
+        } finally {
+            release.countDown();
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testCallerRuns() throws Exception {
+        final XnioWorker worker = createWorker("task-limit-caller-runs", TaskOverflowPolicy.CALLER_RUNS);
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            fill(worker, release);
+            final AtomicReference<Thread> thread = new AtomicReference<Thread>();
+            worker.execute(new Runnable() {
+                public void run() {
+                    thread.set(Thread.currentThread());
+                }
+            });
+            assertSame(Thread.currentThread(), thread.get());
+            assertEquals(Long.valueOf(1L), getAttribute(worker, "RejectedTaskCount"));
+        } finally {
+            release.countDown();
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSuspendReads() throws Exception {
+        final XnioWorker worker = createWorker("task-limit-suspend-reads", TaskOverflowPolicy.SUSPEND_READS);
+        final BlockingQueue<StreamConnection> accepted = new LinkedBlockingQueue<StreamConnection>();
+        final BlockingQueue<Byte> received = new LinkedBlockingQueue<Byte>();
+        final ChannelListener<ConduitStreamSourceChannel> readListener = ChannelListeners.executorChannelListener(new ChannelListener<ConduitStreamSourceChannel>() {
+            public void handleEvent(final ConduitStreamSourceChannel channel) {
+                final ByteBuffer buffer = ByteBuffer.allocate(16);
+                try {
+                    while (channel.read(buffer) > 0) {
+                        buffer.flip();
+                        while (buffer.hasRemaining()) {
+                            received.add(Byte.valueOf(buffer.get()));
+                        }
+                        buffer.clear();
+                    }
+                } catch (Exception e) {
+                    IoUtils.safeClose(channel);
+                }
+            }
+        }, worker);
+        final AcceptingChannel<StreamConnection> server = worker.createStreamConnectionServer(new InetSocketAddress(Inet4Address.getByAddress(new byte[] { 127, 0, 0, 1 }), 0), new ChannelListener<AcceptingChannel<StreamConnection>>() {
+            public void handleEvent(final AcceptingChannel<StreamConnection> channel) {
+                try {
+                    final StreamConnection connection = channel.accept();
+                    if (connection != null) {
+                        connection.getSourceChannel().getReadSetter().set(readListener);
+                        connection.getSourceChannel().resumeReads();
+                        accepted.add(connection);
+                    }
+                } catch (Exception e) {
+                    IoUtils.safeClose(channel);
+                }
+            }
+        }, OptionMap.EMPTY);
+        final CountDownLatch release = new CountDownLatch(1);
+        Socket client = null;
+        try {
+            server.resumeAccepts();
+            final InetSocketAddress address = (InetSocketAddress) server.getLocalAddress();
+            client = new Socket(address.getAddress(), address.getPort());
+            final StreamConnection connection = accepted.poll(5L, TimeUnit.SECONDS);
+            assertNotNull(connection);
+            fill(worker, release);
+            client.getOutputStream().write(42);
+            final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5L);
+            while (((Long) getAttribute(worker, "RejectedTaskCount")).longValue() == 0L) {
+                if (System.nanoTime() - deadline > 0L) {
+                    fail("Read task was not turned away");
+                }
+                Thread.sleep(10L);
+            }
+            // the channel is suspended rather than closed, and resumes once the queue drains
+            assertTrue(connection.isOpen());
+            release.countDown();
+            assertEquals(Byte.valueOf((byte) 42), received.poll(5L, TimeUnit.SECONDS));
+            assertTrue(connection.isOpen());
+        } finally {
+            release.countDown();
+            IoUtils.safeClose(client);
+            for (StreamConnection connection : accepted) {
+                IoUtils.safeClose(connection);
+            }
+            IoUtils.safeClose(server);
+            worker.shutdown();
+        }
+        assertTrue(worker.awaitTermination(5L, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testInvalidLimitRejected() throws Exception {
+        try {
+            xnio.createWorker(OptionMap.create(Options.WORKER_TASK_LIMIT, 0));
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
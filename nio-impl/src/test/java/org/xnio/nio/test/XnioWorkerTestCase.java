@@ -98,6 +98,38 @@ public class XnioWorkerTestCase {
             expected = e;
         }
         assertNotNull(expected);
+
+        expected = null;
+        try {
+            xnio.createWorker(OptionMap.create(Options.WORKER_IO_BUSY_POLL, -1));
+        } catch (IllegalArgumentException e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        expected = null;
+        try {
+            xnio.createWorker(OptionMap.create(Options.WORKER_IO_STALL_THRESHOLD, -1));
+        } catch (IllegalArgumentException e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        expected = null;
+        try {
+            xnio.createWorker(OptionMap.create(Options.WORKER_IO_TASK_BUDGET, -1));
+        } catch (IllegalArgumentException e) {
+            expected = e;
+        }
+        assertNotNull(expected);
+
+        expected = null;
+        try {
+            xnio.createWorker(OptionMap.create(Options.WORKER_IO_KEY_BUDGET, -1));
+        } catch (IllegalArgumentException e) {
+            expected = e;
+        }
+        assertNotNull(expected);
     }
 
     @Test